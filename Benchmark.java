@@ -0,0 +1,404 @@
+import java.io.*;
+import java.util.*;
+
+// Command line benchmark for the classifier hot paths, run on synthetic corpora so
+//      results don't depend on which data files happen to be checked out.
+// This is the no-dependency fallback for the JMH benchmarks in jmh/ (mvn -Pjmh package),
+//      which should be preferred for any numbers that are compared or recorded: this harness
+//      runs in one JVM with no forks and a short warmup, so results vary noticeably between
+//      runs. Each benchmark is warmed up, then timed over several rounds; the median round is
+//      reported.
+//      Covers CSV loading, TextBlock construction, findBiggestDifference, training with both
+//      trainers, classify throughput and latency, save, and loading with the Scanner
+//      constructor.
+// Usage: java Benchmark [rows] [vocabulary] [skew] [baseline]
+//      rows       - number of synthetic messages to generate (default 20000)
+//      vocabulary - number of distinct words in the corpus (default 5000)
+//      skew       - Zipf exponent of the word distribution, 0 is uniform (default 1.0)
+//      results    - results of an earlier run on this machine to compare against; written
+//                   with this run's results if it doesn't exist yet (default none)
+// Usage: java Benchmark scale [rows]
+//      Trains, saves, reloads and classifies 'rows' synthetic messages (default 1000000) on a
+//      thread with a small fixed stack, failing if any of those paths recurse per row or level.
+public class Benchmark {
+    public static final long SEED = 123;
+    public static final int WORDS_PER_MESSAGE = 30;
+    public static final double LABEL_NOISE = 0.05;
+    public static final int SCALE_STACK_BYTES = 256 * 1024;
+    public static final int WARMUP_ROUNDS = 3;
+    public static final int MEASURED_ROUNDS = 5;
+    public static final int HASH_BITS = 18;
+    public static final int INDEXED_MAX_DEPTH = 16;
+    public static final int INDEXED_MIN_LEAF = 5;
+
+    // Results of timed loops are folded into here so the JIT can't discard the loop bodies
+    private static volatile long sink;
+
+    // benchmark name -> median ns/op, in the order they ran
+    private static final Map<String, Double> results = new LinkedHashMap<>();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("scale")) {
+            scale(args.length > 1 ? Integer.parseInt(args[1]) : 1000000);
+            return;
+        }
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int vocabulary = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        double skew = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+        String baseline = args.length > 3 ? args[3] : null;
+
+        System.out.printf("Corpus: %d rows, %d words, skew %.2f%n", rows, vocabulary, skew);
+        List<String> labels = new ArrayList<>();
+        List<String> messages = syntheticMessages(rows, vocabulary, skew, SEED, labels);
+        List<TextBlock> data = new ArrayList<>();
+        for (String message : messages) {
+            data.add(new TextBlock(message));
+        }
+
+        benchmarkLoading(messages, labels);
+        benchmarkTextBlock(messages);
+        benchmarkFindBiggestDifference(data);
+        Classifier c = benchmarkTraining(data, labels);
+        System.out.printf("Tree: %d nodes%n", c.compile().size());
+        benchmarkIndexedTraining(data, labels);
+        benchmarkClassify(c, data);
+        benchmarkClassifyLatency(c, data);
+        benchmarkSaveAndLoad(c);
+        reportModelMemory(messages, labels);
+
+        if (baseline != null) {
+            compareToBaseline(new File(baseline));
+        }
+    }
+
+    // Writes the corpus to a temporary CSV file and times loading it back sequentially with
+    //      the DataLoader constructor and in parallel with DataLoader.loadParallel
+    private static void benchmarkLoading(List<String> messages, List<String> labels)
+            throws IOException {
+        File csv = File.createTempFile("benchmark", ".csv");
+        csv.deleteOnExit();
+        try (PrintStream out = new PrintStream(csv, "UTF-8")) {
+            out.println("Category,Message");
+            for (int i = 0; i < messages.size(); i++) {
+                out.println(labels.get(i) + ",\"" + messages.get(i) + "\"");
+            }
+        }
+        String path = csv.getPath();
+        measure("DataLoader (sequential) per row", messages.size(), () -> {
+            try {
+                return new DataLoader(path, 0, 1, false).getData().size();
+            } catch (FileNotFoundException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        measure("DataLoader.loadParallel per row", messages.size(), () -> {
+            try {
+                return DataLoader.loadParallel(path, 0, 1).getData().size();
+            } catch (FileNotFoundException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Times building a TextBlock from each raw message, with the default dictionary and with
+    //      a hashed one
+    private static void benchmarkTextBlock(List<String> messages) {
+        measure("TextBlock(String)", messages.size(), () -> {
+            long checksum = 0;
+            for (String message : messages) {
+                checksum += new TextBlock(message).getDictionary().hashCode();
+            }
+            return checksum;
+        });
+        FeatureDictionary hashed = FeatureDictionary.hashed(HASH_BITS);
+        measure("TextBlock(String) hashed", messages.size(), () -> {
+            long checksum = 0;
+            for (String message : messages) {
+                checksum += new TextBlock(message, hashed).getTotalWords();
+            }
+            return checksum;
+        });
+    }
+
+    // Times findBiggestDifference between neighbouring data points
+    private static void benchmarkFindBiggestDifference(List<TextBlock> data) {
+        measure("findBiggestDifferenceId", data.size() - 1, () -> {
+            long checksum = 0;
+            for (int i = 1; i < data.size(); i++) {
+                checksum += data.get(i).findBiggestDifferenceId(data.get(i - 1));
+            }
+            return checksum;
+        });
+    }
+
+    // Times training a classifier on the whole corpus, reported per training row
+    private static Classifier benchmarkTraining(List<TextBlock> data, List<String> labels) {
+        Classifier[] trained = new Classifier[1];
+        measure("Classifier(List, List) per row", data.size(), () -> {
+            trained[0] = new Classifier(data, labels);
+            return trained[0].hashCode();
+        });
+        return trained[0];
+    }
+
+    // Times training with IndexedTrainer on the whole corpus, reported per training row, and
+    //      the classify throughput of the tree it grows
+    private static void benchmarkIndexedTraining(List<TextBlock> data, List<String> labels) {
+        IndexedTrainer trainer = new IndexedTrainer(INDEXED_MAX_DEPTH, INDEXED_MIN_LEAF);
+        Classifier[] trained = new Classifier[1];
+        measure("IndexedTrainer.train per row", data.size(), () -> {
+            trained[0] = trainer.train(data, labels);
+            return trained[0].hashCode();
+        });
+        CompiledClassifier compiled = trained[0].compile();
+        System.out.printf("Indexed tree: %d nodes%n", compiled.size());
+        measure("classify (indexed tree)", data.size(), () -> {
+            long checksum = 0;
+            for (TextBlock block : data) {
+                checksum += compiled.classify(block).length();
+            }
+            return checksum;
+        });
+    }
+
+    // Compares single message classify throughput of the pointer tree against the compiled
+    //      tree, checking that both predict the same labels
+    private static void benchmarkClassify(Classifier c, List<TextBlock> data) {
+        CompiledClassifier compiled = c.compile();
+        for (TextBlock block : data) {
+            if (!c.classify(block).equals(compiled.classify(block))) {
+                throw new IllegalStateException("Compiled tree disagrees with pointer tree");
+            }
+        }
+
+        measure("classify (pointer tree)", data.size(), () -> {
+            long checksum = 0;
+            for (TextBlock block : data) {
+                checksum += c.classify(block).length();
+            }
+            return checksum;
+        });
+        measure("classify (compiled tree)", data.size(), () -> {
+            long checksum = 0;
+            for (TextBlock block : data) {
+                checksum += compiled.classify(block).length();
+            }
+            return checksum;
+        });
+    }
+
+    // Times every classify call individually and reports latency percentiles
+    private static void benchmarkClassifyLatency(Classifier c, List<TextBlock> data) {
+        long[] latencies = new long[data.size()];
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long checksum = 0;
+            for (int i = 0; i < data.size(); i++) {
+                long start = System.nanoTime();
+                checksum += c.classify(data.get(i)).length();
+                latencies[i] = System.nanoTime() - start;
+            }
+            sink += checksum;
+        }
+        Arrays.sort(latencies);
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            int index = (int) Math.min(latencies.length - 1, latencies.length * percentile / 100);
+            record("classify latency p" + percentile, latencies[index]);
+        }
+    }
+
+    // Times saving the classifier in the text format and loading it back with Scanner
+    private static void benchmarkSaveAndLoad(Classifier c) {
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        c.save(new PrintStream(saved));
+        String text = saved.toString();
+        measure("save(PrintStream)", 1, () -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            c.save(new PrintStream(out));
+            return out.size();
+        });
+        measure("Classifier(Scanner)", 1, () -> new Classifier(new Scanner(text)).hashCode());
+    }
+
+    // Trains a fresh model on the messages, lets the training TextBlocks be collected, and
+    //      prints the heap the model retains before and after discarding its leaf exemplars,
+    //      along with the off-heap bytes the exemplars took up
+    private static void reportModelMemory(List<String> messages, List<String> labels) {
+        long before = usedHeap();
+        List<TextBlock> data = new ArrayList<>();
+        for (String message : messages) {
+            data.add(new TextBlock(message));
+        }
+        Classifier c = new Classifier(data, labels);
+        data = null;
+        long trained = usedHeap() - before;
+        long offHeap = c.exemplarBytes();
+        c.discardExemplars();
+        long discarded = usedHeap() - before;
+        System.out.printf("Model heap: %d KB with exemplars (+%d KB off-heap), %d KB without%n",
+                          trained / 1024, offHeap / 1024, discarded / 1024);
+        sink += c.hashCode();
+    }
+
+    // Helper method - returns the bytes of heap in use after asking for a full collection
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Runs 'body' WARMUP_ROUNDS times, then MEASURED_ROUNDS timed times, recording the median
+    //      time per operation where each run of 'body' performs 'operations' operations.
+    //      'body' returns a checksum of its work so the JIT can't discard it.
+    private static void measure(String name, int operations, LongCallable body) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            sink += body.call();
+        }
+        double[] rounds = new double[MEASURED_ROUNDS];
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            sink += body.call();
+            rounds[round] = (double) (System.nanoTime() - start) / Math.max(1, operations);
+        }
+        Arrays.sort(rounds);
+        record(name, rounds[MEASURED_ROUNDS / 2]);
+    }
+
+    // Saves and prints one benchmark result
+    private static void record(String name, double nanosPerOp) {
+        results.put(name, nanosPerOp);
+        System.out.printf("%-36s %14.1f ns/op%n", name, nanosPerOp);
+    }
+
+    // Prints how this run's results changed relative to the results saved in 'baseline', or
+    //      saves this run's results there if the file doesn't exist yet
+    private static void compareToBaseline(File baseline) throws IOException {
+        if (!baseline.exists()) {
+            try (PrintStream out = new PrintStream(baseline)) {
+                for (String name : results.keySet()) {
+                    out.println(name + "\t" + results.get(name));
+                }
+            }
+            System.out.println("Saved baseline to " + baseline);
+            return;
+        }
+        System.out.println();
+        System.out.println("Compared to " + baseline + ":");
+        Scanner input = new Scanner(baseline);
+        while (input.hasNextLine()) {
+            String[] parts = input.nextLine().split("\t");
+            if (parts.length == 2 && results.containsKey(parts[0])) {
+                double before = Double.parseDouble(parts[1]);
+                double after = results.get(parts[0]);
+                System.out.printf("%-36s %14.1f -> %14.1f ns/op (%+.1f%%)%n", parts[0], before,
+                                  after, (after - before) / before * 100);
+            }
+        }
+    }
+
+    // A benchmark body that returns a checksum of its work
+    private interface LongCallable {
+        long call();
+    }
+
+    // Trains on 'rows' synthetic messages, then saves, reloads and classifies the model, all on
+    //      a thread whose stack is far too small for any per-row or per-level recursion
+    private static void scale(int rows) throws InterruptedException {
+        Throwable[] failure = new Throwable[1];
+        Thread worker = new Thread(null, () -> {
+            try {
+                List<String> labels = new ArrayList<>();
+                List<TextBlock> data = syntheticBlocks(rows, 50000, 1.0, SEED, labels);
+                long start = System.nanoTime();
+                Classifier c = new Classifier(data, labels);
+                System.out.printf("Trained on %d rows in %.1f s%n", rows,
+                                  (System.nanoTime() - start) / 1e9);
+
+                ByteArrayOutputStream saved = new ByteArrayOutputStream();
+                c.save(new PrintStream(saved));
+                Classifier loaded = new Classifier(new Scanner(saved.toString()));
+                int mismatches = 0;
+                for (TextBlock block : data) {
+                    if (!c.classify(block).equals(loaded.classify(block))) {
+                        mismatches++;
+                    }
+                }
+                System.out.printf("Tree: %d nodes, %d reload mismatches%n", c.compile().size(),
+                                  mismatches);
+                if (mismatches != 0) {
+                    throw new IllegalStateException("Reloaded tree disagrees with trained tree");
+                }
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "scale", SCALE_STACK_BYTES);
+        worker.start();
+        worker.join();
+        if (failure[0] != null) {
+            throw new IllegalStateException("Scaling run failed", failure[0]);
+        }
+        System.out.println("Scaling run passed");
+    }
+
+    // Returns 'rows' synthetic messages drawn from a Zipf distribution over 'vocabulary'
+    //      words, adding the matching "spam"/"ham" label of each to 'labels'.
+    //      Spam and ham draw from the same distribution shifted against each other, so the
+    //      two classes overlap but are learnable. LABEL_NOISE of the labels are flipped, which
+    //      keeps the trained trees from staying trivially small.
+    public static List<String> syntheticMessages(int rows, int vocabulary, double skew,
+                                                 long seed, List<String> labels) {
+        Random rand = new Random(seed);
+        double[] cumulative = zipf(vocabulary, skew);
+        List<String> messages = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            boolean spam = rand.nextBoolean();
+            messages.add(nextMessage(rand, cumulative, spam, sb));
+            labels.add(spam != rand.nextDouble() < LABEL_NOISE ? "spam" : "ham");
+        }
+        return messages;
+    }
+
+    // Same as syntheticMessages, but returns TextBlocks built as each message is generated so
+    //      the message Strings themselves are never all held at once
+    public static List<TextBlock> syntheticBlocks(int rows, int vocabulary, double skew,
+                                                  long seed, List<String> labels) {
+        Random rand = new Random(seed);
+        double[] cumulative = zipf(vocabulary, skew);
+        List<TextBlock> blocks = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            boolean spam = rand.nextBoolean();
+            blocks.add(new TextBlock(nextMessage(rand, cumulative, spam, sb)));
+            labels.add(spam != rand.nextDouble() < LABEL_NOISE ? "spam" : "ham");
+        }
+        return blocks;
+    }
+
+    // Helper method - returns the cumulative (unnormalized) Zipf weights of each word rank
+    private static double[] zipf(int vocabulary, double skew) {
+        double[] cumulative = new double[vocabulary];
+        double total = 0;
+        for (int i = 0; i < vocabulary; i++) {
+            total += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    // Helper method - returns one synthetic message, using 'sb' as scratch space
+    private static String nextMessage(Random rand, double[] cumulative, boolean spam,
+                                      StringBuilder sb) {
+        int vocabulary = cumulative.length;
+        double total = cumulative[vocabulary - 1];
+        sb.setLength(0);
+        for (int i = 0; i < WORDS_PER_MESSAGE; i++) {
+            int rank = Arrays.binarySearch(cumulative, rand.nextDouble() * total);
+            rank = rank < 0 ? -rank - 1 : rank;
+            int word = spam ? (rank + vocabulary / 10) % vocabulary : rank;
+            sb.append("w").append(word).append(' ');
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
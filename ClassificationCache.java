@@ -0,0 +1,160 @@
+import java.util.*;
+
+// This class represents a bounded cache of classification results in front of a Classifier,
+//      for traffic with many exact or near-exact duplicate messages.
+// Results can be keyed by a 64-bit hash of the raw message content, which skips both
+//      TextBlock parsing and classification on a hit, or by a hash of a TextBlock's word
+//      counts, which catches messages that only differ in whitespace or word order.
+// The least recently used result is evicted once the cache is full. Every cached result is
+//      dropped as soon as the classifier learns a new tree.
+// Safe for use by multiple threads at once.
+public class ClassificationCache {
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private final Classifier classifier;
+    private final int capacity;
+    private final Map<Long, String> results;
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Constructs a new ClassificationCache holding at most 'capacity' results for the given
+    //      classifier
+    // Throws an IllegalArgumentException
+    //      If classifier is null or capacity is less than 1
+    public ClassificationCache(Classifier classifier, int capacity) {
+        if (classifier == null || capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.classifier = classifier;
+        this.capacity = capacity;
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                if (size() > ClassificationCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.version = classifier.getVersion();
+    }
+
+    // Returns the label the classifier predicts for the given raw message content, using a
+    //      cached result for identical content if there is one. Misses are parsed into a
+    //      TextBlock with TextBlock.forClassification, the classifier's FeatureDictionary and
+    //      the default Tokenizer.
+    // Throws an IllegalArgumentException
+    //      If content is null
+    public String classify(String content) {
+        if (content == null) {
+            throw new IllegalArgumentException();
+        }
+        long key = hash(content);
+        long seen = classifier.getVersion();
+        String label = lookup(key, seen);
+        if (label == null) {
+            label = classifier.classify(TextBlock.forClassification(content,
+                                                                    classifier.getDictionary()));
+            store(key, label, seen);
+        }
+        return label;
+    }
+
+    // Returns the label the classifier predicts for the given TextBlock, using a cached result
+    //      for a TextBlock with identical word counts if there is one
+    // Throws an IllegalArgumentException
+    //      If input is null or doesn't use the classifier's FeatureDictionary
+    public String classify(TextBlock input) {
+        if (input == null || input.getDictionary() != classifier.getDictionary()) {
+            throw new IllegalArgumentException();
+        }
+        long key = hash(input);
+        long seen = classifier.getVersion();
+        String label = lookup(key, seen);
+        if (label == null) {
+            label = classifier.classify(input);
+            store(key, label, seen);
+        }
+        return label;
+    }
+
+    // Returns the number of classify calls answered from the cache
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    // Returns the number of classify calls that had to run the classifier
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Returns the number of results evicted to make room for newer ones
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // Returns the number of results currently cached
+    public synchronized int size() {
+        return results.size();
+    }
+
+    // Helper method - returns the cached label for 'key', or null, counting the hit or miss.
+    //      'seen' is the classifier version the caller read before looking up; results
+    //      cached for an older version are dropped first. Callers that read a version older
+    //      than the cache's always miss.
+    private synchronized String lookup(long key, long seen) {
+        if (seen > version) {
+            results.clear();
+            version = seen;
+        }
+        String label = seen == version ? results.get(key) : null;
+        if (label == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return label;
+    }
+
+    // Helper method - caches 'label' under 'key' if it was computed on the tree of version
+    //      'seen' and that is still both the classifier's and the cache's version. A result
+    //      computed while a learn was in flight is never cached, even if another thread has
+    //      already moved the cache on to the new version.
+    private synchronized void store(long key, String label, long seen) {
+        if (classifier.getVersion() == seen && version == seen) {
+            results.put(key, label);
+        }
+    }
+
+    // Helper method - returns a 64-bit hash of the chars of 'content'
+    private static long hash(String content) {
+        long hash = SEED ^ content.length();
+        for (int i = 0; i < content.length(); i++) {
+            hash = (hash ^ content.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    // Helper method - returns a 64-bit hash of the word counts of 'block'. The total word
+    //      count is included because blocks built for classification leave unknown words
+    //      out of their ids, and those still change every word probability.
+    private static long hash(TextBlock block) {
+        int[] ids = block.getFeatureIds();
+        int[] counts = block.getCounts();
+        long hash = SEED ^ ids.length ^ ((long) block.getTotalWords() << 32);
+        for (int i = 0; i < ids.length; i++) {
+            hash = (hash ^ (((long) ids[i] << 32) | counts[i])) * 0x100000001B3L;
+            hash ^= hash >>> 29;
+        }
+        return mix(hash);
+    }
+
+    // Helper method - spreads every input bit across the whole hash (SplitMix64 finalizer)
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+}
\ No newline at end of file
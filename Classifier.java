@@ -1,5 +1,8 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
 // Name: Tamara Luu
 // Date: 05/28/25
 // CSE 123
@@ -10,7 +13,19 @@ import java.util.*;
 // The classifier will be where a structured decision proccess is represented to make predictions.
 public class Classifier {
     
-    private ClassifierNode overallRoot;
+    // Batches at most this size are classified by a single task instead of being split further
+    private static final int BATCH_CHUNK_SIZE = 512;
+
+    // Trees reachable from overallRoot are never modified once published here. Online
+    // learning builds an updated copy of the changed path and swaps the root, so readers
+    // always traverse a consistent snapshot.
+    private volatile ClassifierNode overallRoot;
+    // bumped every time learning publishes a new root
+    private volatile long version;
+    private final Object learnLock = new Object();
+    private final FeatureDictionary dictionary;
+    // word counts of the example each leaf was created from, or null once discarded
+    private volatile ExemplarStore exemplars = new ExemplarStore();
 
     // Behavior: This method is a constructor for a Classifier.
     // Exceptions: This method has two exceptions. We have throw an IllegalArgumentException if
@@ -19,9 +34,21 @@ public class Classifier {
     // Parameters: This has one scanner parameter called input, which will be representing a 
     //             classifier from a load file. The input file is formatted in pre-order traversal
     public Classifier(Scanner input){
-        if(input == null){
+        this(input, FeatureDictionary.getDefault());
+    }
+
+    // Behavior: This method is a constructor for a Classifier whose features are looked up in
+    //           the given dictionary. TextBlocks classified by it must share that dictionary.
+    // Exceptions: We throw an IllegalArgumentException if input or dictionary is null, and an
+    //             IllegalStateException if contents of Classifier is null after proccessing
+    // Parameters: We have two parameters.
+    //             input - a classifier from a load file, formatted in pre-order traversal
+    //             dictionary - the FeatureDictionary that feature names are interned into
+    public Classifier(Scanner input, FeatureDictionary dictionary){
+        if(input == null || dictionary == null){
             throw new IllegalArgumentException();
         }
+        this.dictionary = dictionary;
         this.overallRoot = buildClassifier(input);
         if(this.overallRoot == null){
             throw new IllegalStateException();
@@ -32,33 +59,61 @@ public class Classifier {
     //           in a file. Information are ordered by appearance in the file.
     // Return: This method returns a ClassifierNode representing the root of the decision tree.
     //         If the line starts with "Feature: ", it creates a branch node with the extracted
-    //         feature, parsed threshold, and recursively built left and right subtrees.
-    //         Otherwise, it creates and returns a leaf node with the label from the line.
-    //         The entire tree is built recursively by reading the input line-by-line.
+    //         feature and parsed threshold, whose left and right subtrees are the next nodes in
+    //         the file. Otherwise, it creates a leaf node with the label from the line.
+    //         Branches still waiting for children are kept on an explicit stack, so deep trees
+    //         don't grow the call stack. Reading stops as soon as the tree is complete.
+    //         Returns null if the input is empty.
+    // Exceptions: This method throws an IllegalStateException if the input ends before the
+    //             tree is complete.
     // Parameters: This has one scanner parameter called input, which will be representing a
     //             classifier from a load file. The input file is formatted in pre-order traversal
     private ClassifierNode buildClassifier(Scanner input){
-        if(!input.hasNextLine()){
-            return null;
-        }
-        String line = input.nextLine();
-        if(line.startsWith("Feature: ")){ 
-            String feature = line.substring("Feature: ".length()); 
-            double threshold = Double.parseDouble
-                (input.nextLine().substring("Threshold: ".length()));
-            ClassifierNode left = buildClassifier(input);
-            ClassifierNode right = buildClassifier(input);
-            return new ClassifierNode(feature,threshold,left,right);
-        } else {
-            return new ClassifierNode(line); // if no feature
+        ClassifierNode root = null;
+        Deque<ClassifierNode> pending = new ArrayDeque<>();
+        while(input.hasNextLine()){
+            String line = input.nextLine();
+            ClassifierNode node;
+            if(line.startsWith("Feature: ")){ 
+                int feature = dictionary.intern(line.substring("Feature: ".length()));
+                double threshold = Double.parseDouble
+                    (input.nextLine().substring("Threshold: ".length()));
+                node = new ClassifierNode(feature,threshold,null,null);
+            } else {
+                node = new ClassifierNode(line); // if no feature
+            }
+
+            if(root == null){
+                root = node;
+            } else {
+                ClassifierNode parent = pending.peek();
+                if(parent.left == null){
+                    parent.left = node;
+                } else {
+                    parent.right = node;
+                    pending.pop();
+                }
+            }
+            if(node.label == null){
+                pending.push(node);
+            }
+            if(pending.isEmpty()){
+                return root;
+            }
+        }
+        if(!pending.isEmpty()){
+            throw new IllegalStateException("Model input ended before the tree was complete");
         }
+        return root;
     }
 
     // Behavior: This method is a constructor for a Classifer, which will be used to create
     //           and train a classifier from the input data and corresponding labels. Overall,
     //           creating a network.
     // Exceptions: This method throws an illegalArgumentException when data is null or when
-    //             labels is null or data and labels are not the same size or data is empty.
+    //             labels is null or data and labels are not the same size or data is empty,
+    //             or when any TextBlock in data is null or doesn't share the first one's
+    //             FeatureDictionary.
     // Parameters: This method has two parameters:
     //             data - Takes a list of TextBlock objects to be classified
     //             labels -  list of String labels representing the correct classifications for
@@ -67,82 +122,345 @@ public class Classifier {
         if(data == null || labels == null || data.size() != labels.size() || data.isEmpty()){
             throw new IllegalArgumentException();
         }
+        if(data.get(0) == null){
+            throw new IllegalArgumentException();
+        }
+        this.dictionary = data.get(0).getDictionary();
+        for(TextBlock block : data){
+            if(block == null || block.getDictionary() != dictionary){
+                throw new IllegalArgumentException();
+            }
+        }
         this.overallRoot = makeClassifierHelper(0, data, labels, null);
     }
 
+    // Behavior: This method is a constructor for a Classifier, which trains a classifier from a
+    //           stream of labeled data, consuming one data point at a time so the stream never
+    //           has to be collected into lists first.
+    // Exceptions: This method throws an IllegalArgumentException when data is null or empty,
+    //             or when any of its TextBlocks doesn't share the first one's FeatureDictionary.
+    // Parameters: data - a Stream of labeled TextBlocks, in the order they should be learned
+    public Classifier(Stream<LabeledTextBlock> data) {
+        if(data == null){
+            throw new IllegalArgumentException();
+        }
+        Iterator<LabeledTextBlock> rows = data.sequential().iterator();
+        if(!rows.hasNext()){
+            throw new IllegalArgumentException();
+        }
+        LabeledTextBlock first = rows.next();
+        this.dictionary = first.getBlock().getDictionary();
+        ClassifierNode root = trainExample(null, first.getBlock(), first.getLabel(), false);
+        while(rows.hasNext()){
+            LabeledTextBlock row = rows.next();
+            if(row.getBlock().getDictionary() != dictionary){
+                throw new IllegalArgumentException();
+            }
+            root = trainExample(root, row.getBlock(), row.getLabel(), false);
+        }
+        this.overallRoot = root;
+    }
+
+    // Behavior: This method is a constructor for a Classifier, which rebuilds the decision tree
+    //           of a compiled classifier (for example one loaded with ModelFile) as nodes.
+    // Exceptions: This method throws an IllegalArgumentException if compiled is null
+    // Parameters: compiled - the CompiledClassifier to copy the decision tree from
+    public Classifier(CompiledClassifier compiled) {
+        this(compiled, null);
+    }
+
+    // Behavior: This method is a constructor for a Classifier, which rebuilds the decision tree
+    //           of a compiled classifier as nodes, giving leaves the example they were grown
+    //           from so the classifier can keep learning (used by IndexedTrainer).
+    // Exceptions: This method throws an IllegalArgumentException if compiled is null
+    // Parameters: compiled - the CompiledClassifier to copy the decision tree from
+    //             leafExemplars - the example of each leaf, indexed like compiled's nodes;
+    //                             may be null, as may any of its entries
+    Classifier(CompiledClassifier compiled, TextBlock[] leafExemplars) {
+        if(compiled == null){
+            throw new IllegalArgumentException();
+        }
+        this.dictionary = compiled.getDictionary();
+        ClassifierNode[] nodes = new ClassifierNode[compiled.size()];
+        // post-order with an explicit stack so children always exist before their parent
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(0);
+        while(!stack.isEmpty()){
+            int i = stack.peek();
+            if(compiled.labelIds[i] >= 0){
+                TextBlock exemplar = leafExemplars == null ? null : leafExemplars[i];
+                nodes[i] = new ClassifierNode(compiled.labels[compiled.labelIds[i]],
+                                              exemplar == null ? -1 : exemplars.add(exemplar));
+                stack.pop();
+            } else if(nodes[compiled.left[i]] == null){
+                stack.push(compiled.left[i]);
+            } else if(nodes[compiled.right[i]] == null){
+                stack.push(compiled.right[i]);
+            } else {
+                nodes[i] = new ClassifierNode(compiled.features[i], compiled.thresholds[i],
+                                              nodes[compiled.left[i]], nodes[compiled.right[i]]);
+                stack.pop();
+            }
+        }
+        this.overallRoot = nodes[0];
+    }
+
     // Behavior: This method will be used to help construct and train a new Classifer using the
-    //           given input data and corresponding labels to update our network tree.
+    //           given input data and corresponding labels to update our network tree. Examples
+    //           are learned in a loop, so the stack depth doesn't depend on the data size.
     // Return: Returns a ClassifierNode representing the root of the full classification tree
     //         built from the provided data and labels.
     // Parameters: 
-    //   - index: an integer representing the current position in the data and labels lists.
+    //   - index: an integer representing the position in the data and labels lists to start at.
     //   - data: a List of TextBlock objects representing the text data to classify.
     //   - labels: a List of String labels that correspond to each TextBlock.
     //   - root: the current root of the classification tree being built or updated.
     private ClassifierNode makeClassifierHelper(int index, List<TextBlock> data, 
         List<String> labels, ClassifierNode root){
-        if(index == data.size()){
-            return root;
+        for(int i = index; i < data.size(); i++){
+            root = trainExample(root, data.get(i), labels.get(i), false);
         }
-        TextBlock currentData = data.get(index);
-        String expected = labels.get(index);
+        return root;
+    }
+
+    // Behavior: This method applies feedback to this live classifier, learning the given
+    //           example the same way training does: the tree only changes if it currently
+    //           misclassifies data. Concurrent classify calls keep using the tree as it was
+    //           until the updated tree is swapped in.
+    // Exceptions: This method throws an IllegalArgumentException if data or label is null, or if
+    //             data doesn't use this classifier's FeatureDictionary. It throws an
+    //             IllegalStateException if exemplars have been discarded.
+    // Parameters: We have two parameters.
+    //             data - the TextBlock to learn
+    //             label - the correct label for data
+    public void learn(TextBlock data, String label) {
+        if(data == null || label == null || data.getDictionary() != dictionary){
+            throw new IllegalArgumentException();
+        }
+        synchronized(learnLock){
+            if(exemplars == null){
+                throw new IllegalStateException("Exemplars were discarded; this model can't learn");
+            }
+            ClassifierNode root = trainExample(overallRoot, data, label, true);
+            if(root != overallRoot){
+                overallRoot = root;
+                version++;
+            }
+        }
+    }
+
+    // Behavior: This method learns every labeled example in the stream, in order, as if learn
+    //           were called on each one.
+    // Exceptions: This method throws an IllegalArgumentException if data is null or contains an
+    //             example learn would reject
+    // Parameters: data - a Stream of labeled TextBlocks to learn
+    public void learnAll(Stream<LabeledTextBlock> data) {
+        if(data == null){
+            throw new IllegalArgumentException();
+        }
+        Iterator<LabeledTextBlock> rows = data.sequential().iterator();
+        while(rows.hasNext()){
+            LabeledTextBlock row = rows.next();
+            learn(row.getBlock(), row.getLabel());
+        }
+    }
+
+    // Behavior: This method will be used to learn a single training example. The first example
+    //           becomes the root leaf; after that, the tree is only updated when it
+    //           misclassifies the example.
+    // Return: Returns a ClassifierNode representing the root of the updated tree.
+    // Parameters:
+    //   - root: the current root of the classification tree, or null if nothing is learned yet
+    //   - currentData: the TextBlock to learn
+    //   - expected: the correct label for currentData
+    //   - copyPath: true if root is already published and must not be modified in place
+    private ClassifierNode trainExample(ClassifierNode root, TextBlock currentData,
+        String expected, boolean copyPath){
         if(root == null){
-            root = new ClassifierNode(expected, currentData);
+            root = new ClassifierNode(expected, exemplars.add(currentData));
         } else {
             String prediction = classify(root,currentData);
             if(!prediction.equals(expected)){
-                root = updateTree(root, currentData, expected);
+                root = updateTree(root, currentData, expected, copyPath);
             }
         }
-        return makeClassifierHelper(index + 1, data, labels, root);
+        return root;
     }
 
     // Behavior: Updates the classification tree rooted at the given node to correctly classify
     //           the provided TextBlock and label. If the current node is a leaf, it is replaced
     //           with a new branch node that separates the original and new examples based on their
-    //           most distinguishing feature. If the node is a branch, the method recursively
-    //           updates the appropriate subtree.
+    //           most distinguishing feature. If the node is a branch, the method walks down
+    //           to the leaf the data falls into and replaces that leaf.
     // Parameters:
     //   - node: the current node in the tree being examined or updated
     //   - data: the new TextBlock that was misclassified and should be incorporated
     //   - label: the correct label for the given TextBlock
+    //   - copyPath: if true, the tree under node is left untouched and every branch on the
+    //               path to the replaced leaf is copied instead; if false, the leaf is replaced
+    //               in place
     // Return: A ClassifierNode representing the updated root of the classification tree,
     //         now modified to include the new training example and correctly classify it.
-    private ClassifierNode updateTree(ClassifierNode node, TextBlock data, String label) {
-        if (node.isLeaf()) {
-            String bestFeature = data.findBiggestDifference(node.textData);
-            double threshold = midpoint(data.get(bestFeature), node.textData.get(bestFeature));
+    private ClassifierNode updateTree(ClassifierNode node, TextBlock data, String label,
+        boolean copyPath) {
+        List<ClassifierNode> path = new ArrayList<>();
+        ClassifierNode leaf = node;
+        while (!leaf.isLeaf()) {
+            path.add(leaf);
+            leaf = data.get(leaf.feature) < leaf.threshold ? leaf.left : leaf.right;
+        }
 
-            ClassifierNode leaf1 = new ClassifierNode(label, data);
+        TextBlock leafData = leaf.exemplar < 0 ? new TextBlock("", dictionary)
+                                               : exemplars.get(leaf.exemplar, dictionary);
+        int bestFeature = data.findBiggestDifferenceId(leafData);
+        if (bestFeature < 0) {
+            return node; // identical word probabilities, nothing to split on
+        }
+        double threshold = midpoint(data.get(bestFeature), leafData.get(bestFeature));
 
-            if (data.get(bestFeature) < threshold) {
-                return new ClassifierNode(bestFeature, threshold, leaf1, node);
-            } else {
-                return new ClassifierNode(bestFeature, threshold, node, leaf1);
-            }
+        ClassifierNode leaf1 = new ClassifierNode(label, exemplars.add(data));
+        ClassifierNode split;
+        if (data.get(bestFeature) < threshold) {
+            split = new ClassifierNode(bestFeature, threshold, leaf1, leaf);
         } else {
-            double value = data.get(node.feature);
-            if (value < node.threshold) {
-                node.left = updateTree(node.left, data, label);
+            split = new ClassifierNode(bestFeature, threshold, leaf, leaf1);
+        }
+
+        if (path.isEmpty()) {
+            return split;
+        }
+        if (!copyPath) {
+            ClassifierNode parent = path.get(path.size() - 1);
+            if (parent.left == leaf) {
+                parent.left = split;
             } else {
-                node.right = updateTree(node.right, data, label);
+                parent.right = split;
             }
             return node;
         }
+        // rebuild the path bottom-up so the published tree is never modified
+        ClassifierNode child = split;
+        ClassifierNode replaced = leaf;
+        for (int i = path.size() - 1; i >= 0; i--) {
+            ClassifierNode parent = path.get(i);
+            if (parent.left == replaced) {
+                child = new ClassifierNode(parent.feature, parent.threshold, child, parent.right);
+            } else {
+                child = new ClassifierNode(parent.feature, parent.threshold, parent.left, child);
+            }
+            child.shareVisits(parent);
+            replaced = parent;
+        }
+        return child;
     }
 
     // Behavior/ Return : This method will be where we return the appropiate label that
     //                    classifier predicts.
     // Exceptions: This method throws an IllegalArgumentException if textblock input is null
     // Parameters: We have one parameter.
-    //             input - A TextBlock reprsenting text data to be classified
+    //             input - A TextBlock reprsenting text data to be classified.
+    //                     It must use the same FeatureDictionary as this classifier.
     public String classify(TextBlock input) {
-        if(input == null){
+        if(input == null || input.getDictionary() != dictionary){
             throw new IllegalArgumentException();
         }
+        if(ClassifierMetrics.isEnabled()){
+            return classifyMeasured(overallRoot, input);
+        }
         return classify(overallRoot, input);
     }
 
+    // Behavior: This method classifies every TextBlock in data, splitting large batches across
+    //           the cores of the common ForkJoinPool.
+    // Return: Returns a List of predicted labels where the i-th label belongs to the i-th input.
+    // Exceptions: This method throws an IllegalArgumentException if data or any of its
+    //             TextBlocks is null
+    // Parameters: data - a List of TextBlocks to be classified
+    public List<String> classifyAll(List<TextBlock> data) {
+        return classifyAll(data, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    // Behavior: This method classifies every TextBlock in data using at most parallelism
+    //           threads. A parallelism of 1 classifies on the calling thread.
+    // Return: Returns a List of predicted labels where the i-th label belongs to the i-th input.
+    // Exceptions: This method throws an IllegalArgumentException if data or any of its
+    //             TextBlocks is null, or if parallelism is less than 1
+    // Parameters: We have two parameters.
+    //             data - a List of TextBlocks to be classified
+    //             parallelism - the maximum number of threads to classify with
+    public List<String> classifyAll(List<TextBlock> data, int parallelism) {
+        if(data == null || parallelism < 1){
+            throw new IllegalArgumentException();
+        }
+        String[] results = new String[data.size()];
+        if(parallelism == 1 || data.size() <= BATCH_CHUNK_SIZE){
+            // a plain loop, since even compute() forks its halves onto the common pool
+            for(int i = 0; i < results.length; i++){
+                results[i] = classify(data.get(i));
+            }
+            return Arrays.asList(results);
+        }
+        ClassifyTask task = new ClassifyTask(this, data, results, 0, data.size());
+        if(parallelism == ForkJoinPool.getCommonPoolParallelism()){
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    // Behavior: This method lazily classifies a stream of TextBlocks. Parallel input streams
+    //           are scored in parallel, and ordered input streams keep their order.
+    // Return: Returns a Stream of predicted labels, one per input TextBlock.
+    // Parameters: data - a Stream of TextBlocks to be classified
+    public Stream<String> classifyAll(Stream<TextBlock> data) {
+        if(data == null){
+            throw new IllegalArgumentException();
+        }
+        return data.map(this::classify);
+    }
+
+    // This inner class will be where a range of a batch gets classified, splitting itself in
+    // half until ranges are small enough to score on one thread
+    private static class ClassifyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Classifier classifier;
+        private final List<TextBlock> data;
+        private final String[] results;
+        private final int start;
+        private final int end;
+
+        // Behavior: Constructs a task that classifies data[start, end) into results[start, end)
+        private ClassifyTask(Classifier classifier, List<TextBlock> data, String[] results,
+            int start, int end){
+            this.classifier = classifier;
+            this.data = data;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        // Behavior: Classifies this task's range, forking halves while it is too large
+        @Override
+        protected void compute(){
+            if(end - start <= BATCH_CHUNK_SIZE){
+                for(int i = start; i < end; i++){
+                    results[i] = classifier.classify(data.get(i));
+                }
+            } else {
+                int mid = (start + end) >>> 1;
+                invokeAll(new ClassifyTask(classifier, data, results, start, mid),
+                          new ClassifyTask(classifier, data, results, mid, end));
+            }
+        }
+    }
+
     // Behavior: This method will be used to determine the appropiate classification label for
     //           given TextBlock input by traversing the classification tree starting at the 
     //           specified root node.
@@ -155,15 +473,172 @@ public class Classifier {
         if (root == null) {
             throw new IllegalArgumentException();
         }
-        if (root.isLeaf()) {
-            return root.label;
+        while (!root.isLeaf()) {
+            double value = input.get(root.feature); 
+            if (value < root.threshold){
+                root = root.left;
+            } else{
+                root = root.right;
+            }
+        }
+        return root.label;
+    }
+
+    // Behavior: This method classifies input the same way classify(root, input) does, while
+    //           counting a visit on every node it passes and recording the time taken and the
+    //           number of branches visited with ClassifierMetrics.
+    // Return: This method returns a String representing the predicted label for the input.
+    // Exception: This method throws an IllegalArgumentException if the root is null.
+    private String classifyMeasured(ClassifierNode root, TextBlock input){
+        if (root == null) {
+            throw new IllegalArgumentException();
+        }
+        long start = System.nanoTime();
+        int depth = 0;
+        while (!root.isLeaf()) {
+            root.countVisit();
+            depth++;
+            root = input.get(root.feature) < root.threshold ? root.left : root.right;
+        }
+        root.countVisit();
+        ClassifierMetrics.recordClassify(System.nanoTime() - start, depth);
+        return root.label;
+    }
+
+    // Behavior: This method returns the FeatureDictionary this classifier's features come from.
+    //           TextBlocks passed to classify must use the same dictionary.
+    public FeatureDictionary getDictionary() {
+        return dictionary;
+    }
+
+    // Behavior: This method reports which version of the decision tree this classifier is on,
+    //           so callers that remember results can tell when they went stale.
+    // Return: Returns a number that changes every time learning changes the decision tree.
+    public long getVersion() {
+        return version;
+    }
+
+    // Behavior: This method reports how often each node of the tree was visited by classify
+    //           while ClassifierMetrics was enabled. Each node counts with its own LongAdder,
+    //           created on its first measured visit, so concurrent classify calls neither
+    //           lose counts nor contend on hot nodes, and unmeasured trees don't pay for them.
+    // Return: Returns one visit count per node, in the same pre-order as save.
+    public long[] getNodeVisits() {
+        List<Long> visits = new ArrayList<>();
+        collectNodeVisits(new ArrayList<>(), new ArrayList<>(), visits);
+        long[] result = new long[visits.size()];
+        for(int i = 0; i < result.length; i++){
+            result[i] = visits.get(i);
+        }
+        return result;
+    }
+
+    // Behavior: This method adds a description of every node of the tree to names ("word <
+    //           threshold" for a branch, "-> label" for a leaf), the word it branches on to
+    //           features (null for a leaf) and its visit count to visits, all in the same
+    //           pre-order as save.
+    // Parameters: We have three parameters.
+    //             names - the list node descriptions are added to
+    //             features - the list branch words are added to
+    //             visits - the list visit counts are added to
+    void collectNodeVisits(List<String> names, List<String> features, List<Long> visits) {
+        Deque<ClassifierNode> stack = new ArrayDeque<>();
+        stack.push(overallRoot);
+        while(!stack.isEmpty()){
+            ClassifierNode node = stack.pop();
+            visits.add(node.visitCount());
+            if(node.isLeaf()){
+                names.add("-> " + node.label);
+                features.add(null);
+            } else {
+                String feature = dictionary.nameOf(node.feature);
+                names.add(feature + " < " + node.threshold);
+                features.add(feature);
+                stack.push(node.right);
+                stack.push(node.left);
+            }
+        }
+    }
+
+    // Behavior: This method sets the visit count of every node in the tree back to 0.
+    public void resetNodeVisits() {
+        Deque<ClassifierNode> stack = new ArrayDeque<>();
+        stack.push(overallRoot);
+        while(!stack.isEmpty()){
+            ClassifierNode node = stack.pop();
+            node.resetVisits();
+            if(!node.isLeaf()){
+                stack.push(node.right);
+                stack.push(node.left);
+            }
+        }
+    }
+
+    // Behavior: This method drops the stored example of every leaf, for inference-only
+    //           deployments. Classification is unaffected, but the classifier can no longer
+    //           learn.
+    public void discardExemplars() {
+        synchronized(learnLock){
+            exemplars = null;
+        }
+    }
+
+    // Behavior: This method reports how much memory leaf exemplars take up.
+    // Return: Returns the number of off-heap bytes holding leaf exemplars, or 0 if they have
+    //         been discarded.
+    public long exemplarBytes() {
+        ExemplarStore store = exemplars;
+        return store == null ? 0 : store.size();
+    }
+
+    // Behavior: This method will be where we flatten the classification network into
+    //           parallel arrays laid out in breadth-first order, so it can be evaluated
+    //           with a loop instead of recursive pointer chasing. Later changes to this
+    //           classifier are not reflected in the returned copy.
+    // Return: This method returns a CompiledClassifier that predicts exactly the same labels
+    //         as this classifier.
+    public CompiledClassifier compile() {
+        List<ClassifierNode> order = new ArrayList<>();
+        order.add(overallRoot); // read the root once so we compile a single snapshot
+        for (int i = 0; i < order.size(); i++) {
+            ClassifierNode node = order.get(i);
+            if (!node.isLeaf()) {
+                order.add(node.left);
+                order.add(node.right);
+            }
         }
-        double value = input.get(root.feature); 
-        if (value < root.threshold){
-            return classify(root.left, input);
-        } else{
-            return classify(root.right, input);
+
+        int size = order.size();
+        int[] features = new int[size];
+        double[] thresholds = new double[size];
+        int[] left = new int[size];
+        int[] right = new int[size];
+        int[] labelIds = new int[size];
+        List<String> labels = new ArrayList<>();
+        Map<String, Integer> labelToId = new HashMap<>();
+        int next = 1;
+        for (int i = 0; i < size; i++) {
+            ClassifierNode node = order.get(i);
+            if (node.isLeaf()) {
+                if (!labelToId.containsKey(node.label)) {
+                    labelToId.put(node.label, labels.size());
+                    labels.add(node.label);
+                }
+                features[i] = -1;
+                left[i] = -1;
+                right[i] = -1;
+                labelIds[i] = labelToId.get(node.label);
+            } else {
+                features[i] = node.feature;
+                thresholds[i] = node.threshold;
+                left[i] = next;
+                right[i] = next + 1;
+                labelIds[i] = -1;
+                next += 2;
+            }
         }
+        return new CompiledClassifier(dictionary, features, thresholds, left, right, labelIds,
+                                      labels.toArray(new String[0]));
     }
 
     // Behavior: This method will be where we save classification network to file
@@ -187,62 +662,82 @@ public class Classifier {
     //                       Every branch node will print two lines of data, one for feature 
     //                       preceded by "Feature: " and one for threshold preceded by
     //                       "Threshold: ". For leaf nodes, you should only print the label.
+    //                       Nodes still to print are kept on an explicit stack.
     private void save(ClassifierNode root, PrintStream output){
+        Deque<ClassifierNode> stack = new ArrayDeque<>();
         if(root != null){
-            if(root.isLeaf()){
-                output.println(root.label);
+            stack.push(root);
+        }
+        while(!stack.isEmpty()){
+            ClassifierNode node = stack.pop();
+            if(node.isLeaf()){
+                output.println(node.label);
             } else {
-                output.println("Feature: " + root.feature);
-                output.println("Threshold: " + root.threshold);
-                save(root.left, output);
-                save(root.right, output);
+                output.println("Feature: " + dictionary.nameOf(node.feature));
+                output.println("Threshold: " + node.threshold);
+                stack.push(node.right);
+                stack.push(node.left);
             }
         }
     }
 
+    // rough heap cost of one ClassifierNode with compressed references: a 12 byte header,
+    //      four references, the int feature, the double threshold and the long exemplar, padded
+    //      to 48. A node visited while ClassifierMetrics was enabled also holds a LongAdder of
+    //      about 32 more. Keep in step with the fields below.
+    static final long NODE_BYTES = 48;
+
     // This inner class will be where represent nodes of a network
     private static class ClassifierNode {
         public final String label;
-        public final String feature;
+        public final int feature;
         public final double threshold;
-        public final TextBlock textData;
+        public final long exemplar;
         public ClassifierNode left;
         public ClassifierNode right;
+        private static final AtomicReferenceFieldUpdater<ClassifierNode, LongAdder> VISITS =
+                AtomicReferenceFieldUpdater.newUpdater(ClassifierNode.class, LongAdder.class,
+                                                       "visits");
+
+        // classify calls that passed through this node while ClassifierMetrics was enabled,
+        //      or null until the first one; shared with the copies learn makes of this node,
+        //      so counts carry over
+        private volatile LongAdder visits;
 
         // Behavior: This method will be a constructor for ClassifierNode
         // Parameters: We have two paramters. We have a string called label,
         //             which will represent labels associated with text data.
-        //             We have a textblock called textData, which will represent
-        //             the given text data we are classifying. 
-        private ClassifierNode(String label, TextBlock textData){ // leaf node constructor
+        //             We have a long called exemplar, which is the ExemplarStore handle of
+        //             the text data this leaf was created from, or -1 if there is none.
+        private ClassifierNode(String label, long exemplar){ // leaf node constructor
             this.label = label;
-            this.feature = null;
-            this.textData = textData;
+            this.feature = -1;
+            this.exemplar = exemplar;
             this.threshold = 0.0;
         }
 
         // Behavior: This method will be a constructor for ClassifierNode when classifying
-        //           labels in our network
+        //           labels in our network, for leaves loaded without any text data
         // Parameters: We have one string parameter called label, which will represent labels
         //             for ClassifierNode
         private ClassifierNode(String label){
-            this(label,new TextBlock(""));
+            this(label, -1);
         }
 
         // Behavior: Constructs a decision node in the classifier tree that directs classification 
         //           based on a feature and threshold.
         // Parameters: We have 4 parameters.
-        //   feature: the feature name used for making decisions.
+        //   feature: the dictionary id of the feature used for making decisions.
         //   threshold: the cutoff value to determine left or right subtree traversal.
         //   left: the left child node representing the subtree for values less than the threshold.
         //   right: the right child node representing the subtree for values greater than or equal
         //          to the threshold.
-        private ClassifierNode(String feature, double threshold, ClassifierNode left, 
+        private ClassifierNode(int feature, double threshold, ClassifierNode left, 
             ClassifierNode right){
             this.feature = feature;
             this.label = null;
             this.threshold = threshold;
-            this.textData = new TextBlock(""); 
+            this.exemplar = -1;
             this.left = left;
             this.right = right;
         }
@@ -253,6 +748,74 @@ public class Classifier {
         private boolean isLeaf(){
             return left == null && right == null;
         }
+
+        // Behavior: This method counts one visit to this node, creating its counter on the
+        //           first visit. Racing first visits agree on one counter through a CAS.
+        private void countVisit(){
+            LongAdder adder = visits;
+            if(adder == null){
+                VISITS.compareAndSet(this, null, new LongAdder());
+                adder = visits;
+            }
+            adder.increment();
+        }
+
+        // Behavior: This method makes this node, a copy learn just made of original, count
+        //           visits with original's counter. Visits made to original after this, by
+        //           classify calls still on the old tree, are lost if it had no counter yet.
+        // Parameters: original - the node this node replaces
+        private void shareVisits(ClassifierNode original){
+            visits = original.visits;
+        }
+
+        // Behavior: This method returns the number of visits counted on this node.
+        private long visitCount(){
+            LongAdder adder = visits;
+            return adder == null ? 0 : adder.sum();
+        }
+
+        // Behavior: This method sets this node's visit count back to 0.
+        private void resetVisits(){
+            LongAdder adder = visits;
+            if(adder != null){
+                adder.reset();
+            }
+        }
+    }
+
+    // Behavior: This method calculates accuracy over a stream of labeled data, consuming it one
+    //           data point at a time so the test set never has to be held in memory.
+    // Return: Returns a Map from each label that was predicted correctly at least once, plus
+    //         "Overall", to the fraction of data points with that label classified correctly.
+    // Exceptions: This method throws an IllegalArgumentException if data is null
+    // Parameters: data - a Stream of labeled TextBlocks to test against
+    public Map<String, Double> calculateAccuracy(Stream<LabeledTextBlock> data) {
+        if(data == null){
+            throw new IllegalArgumentException();
+        }
+        Map<String, Integer> labelToTotal = new HashMap<>();
+        Map<String, Double> labelToCorrect = new HashMap<>();
+        labelToTotal.put("Overall", 0);
+        labelToCorrect.put("Overall", 0.0);
+
+        Iterator<LabeledTextBlock> rows = data.sequential().iterator();
+        while(rows.hasNext()){
+            LabeledTextBlock row = rows.next();
+            String result = classify(row.getBlock());
+            String label = row.getLabel();
+
+            labelToTotal.put(label, labelToTotal.getOrDefault(label, 0) + 1);
+            labelToTotal.put("Overall", labelToTotal.get("Overall") + 1);
+            if(result.equals(label)){
+                labelToCorrect.put(result, labelToCorrect.getOrDefault(result, 0.0) + 1);
+                labelToCorrect.put("Overall", labelToCorrect.get("Overall") + 1);
+            }
+        }
+
+        for(String label : labelToCorrect.keySet()){
+            labelToCorrect.put(label, labelToCorrect.get(label) / labelToTotal.get(label));
+        }
+        return labelToCorrect;
     }
 
     ////////////////////////////////////////////////////////////////////
@@ -275,8 +838,9 @@ public class Classifier {
         labelToTotal.put("Overall", 0);
         labelToCorrect.put("Overall", 0.0);
 
+        List<String> results = classifyAll(data);
         for (int i = 0; i < data.size(); i++) {
-            String result = classify(data.get(i));
+            String result = results.get(i);
             String label = labels.get(i);
 
             labelToTotal.put(label, labelToTotal.getOrDefault(label, 0) + 1);
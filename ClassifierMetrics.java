@@ -0,0 +1,256 @@
+import java.lang.management.*;
+import java.util.*;
+import java.util.function.*;
+import javax.management.*;
+
+// This class represents opt-in, process-wide metrics for TextBlock parsing and Classifier
+//      traversal: how long parsing and classifying take and how deep classify walks the
+//      tree. Classifier additionally counts visits per tree node while metrics are on (see
+//      Classifier.getNodeVisits); after track(classifier), snapshots and the MBean also
+//      report that classifier's most visited nodes and the features they branch on.
+// Metrics are off by default. While off, instrumented code pays for a single volatile read.
+// Values can be read through snapshot() or, after registerMBean(), over JMX.
+// Safe for use by multiple threads at once.
+public class ClassifierMetrics implements ClassifierMetricsMBean {
+    public static final String OBJECT_NAME = "SpamClassification:type=ClassifierMetrics";
+    // number of nodes and features the MBean lists as hottest
+    public static final int HOTTEST = 10;
+
+    private static final int STRIPES =
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    private static volatile boolean enabled;
+    private static volatile Classifier tracked;
+
+    // recordings are spread over several independently locked stripes to limit contention
+    private static final Stripe[] stripes = new Stripe[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // Returns true if metrics are currently being recorded
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Starts or stops recording metrics. Recorded values are kept either way.
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    // Sets the classifier whose node and feature visits snapshots report, replacing any
+    //      classifier tracked before; null stops reporting them. Keeps 'classifier' reachable
+    //      until another one is tracked.
+    public static void track(Classifier classifier) {
+        tracked = classifier;
+    }
+
+    // Records that parsing one TextBlock took 'nanos' nanoseconds
+    public static void recordParse(long nanos) {
+        Stripe stripe = stripe();
+        synchronized (stripe) {
+            stripe.parse.record(nanos);
+        }
+    }
+
+    // Records that one classify call took 'nanos' nanoseconds and visited 'depth' branches
+    public static void recordClassify(long nanos, int depth) {
+        Stripe stripe = stripe();
+        synchronized (stripe) {
+            stripe.classify.record(nanos);
+            stripe.depth.record(depth);
+        }
+    }
+
+    // Returns a copy of everything recorded so far
+    public static Snapshot snapshot() {
+        Snapshot snapshot = nodeSnapshot();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                snapshot.parse.merge(stripe.parse);
+                snapshot.classify.merge(stripe.classify);
+                snapshot.depth.merge(stripe.depth);
+            }
+        }
+        return snapshot;
+    }
+
+    // Discards everything recorded so far, including the tracked classifier's node visits
+    public static void clear() {
+        Classifier classifier = tracked;
+        if (classifier != null) {
+            classifier.resetNodeVisits();
+        }
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.parse.reset();
+                stripe.classify.reset();
+                stripe.depth.reset();
+            }
+        }
+    }
+
+    // Registers these metrics with the platform MBeanServer under OBJECT_NAME, unless they are
+    //      registered already
+    // Throws an IllegalStateException
+    //      If the MBean can't be registered
+    public static synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new ClassifierMetrics(), name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Couldn't register classifier metrics MBean", e);
+        }
+    }
+
+    // MBean attributes, each read fresh. Every attribute merges only the histogram it reads,
+    //      and only the hottest node and feature lists walk the tracked classifier's tree.
+
+    public boolean isRecording() { return isEnabled(); }
+    public void setRecording(boolean on) { setEnabled(on); }
+    public long getParseCount() { return merged(stripe -> stripe.parse).getCount(); }
+    public long getParseNanosP50() { return merged(stripe -> stripe.parse).getPercentile(50); }
+    public long getParseNanosP99() { return merged(stripe -> stripe.parse).getPercentile(99); }
+    public long getClassifyCount() { return merged(stripe -> stripe.classify).getCount(); }
+    public long getClassifyNanosP50() {
+        return merged(stripe -> stripe.classify).getPercentile(50);
+    }
+    public long getClassifyNanosP99() {
+        return merged(stripe -> stripe.classify).getPercentile(99);
+    }
+    public long getPathDepthP50() { return merged(stripe -> stripe.depth).getPercentile(50); }
+    public long getPathDepthMax() { return merged(stripe -> stripe.depth).getPercentile(100); }
+    public String[] getHottestNodes() {
+        return nodeSnapshot().getHottestNodes(HOTTEST).toArray(new String[0]);
+    }
+    public String[] getHottestFeatures() {
+        return nodeSnapshot().getHottestFeatures(HOTTEST).toArray(new String[0]);
+    }
+    public void reset() { clear(); }
+
+    // Helper method - returns the stripe the calling thread records into
+    private static Stripe stripe() {
+        return stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+    }
+
+    // Helper method - returns a copy of one kind of histogram, 'histogram' of each stripe,
+    //      merged over every stripe
+    private static LatencyHistogram merged(Function<Stripe, LatencyHistogram> histogram) {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                merged.merge(histogram.apply(stripe));
+            }
+        }
+        return merged;
+    }
+
+    // Helper method - returns a snapshot holding only the tracked classifier's node visits,
+    //      with empty histograms
+    private static Snapshot nodeSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        Classifier classifier = tracked;
+        if (classifier != null) {
+            classifier.collectNodeVisits(snapshot.nodeNames, snapshot.nodeFeatures,
+                                         snapshot.nodeVisits);
+        }
+        return snapshot;
+    }
+
+    // This class holds one stripe's histograms, guarded by the stripe's own lock
+    private static class Stripe {
+        private final LatencyHistogram parse = new LatencyHistogram();
+        private final LatencyHistogram classify = new LatencyHistogram();
+        private final LatencyHistogram depth = new LatencyHistogram();
+    }
+
+    // This class represents the metrics recorded up to one moment in time
+    public static class Snapshot {
+        private final LatencyHistogram parse = new LatencyHistogram();
+        private final LatencyHistogram classify = new LatencyHistogram();
+        private final LatencyHistogram depth = new LatencyHistogram();
+        // the tracked classifier's nodes in pre-order, as Classifier.collectNodeVisits lists them
+        private final List<String> nodeNames = new ArrayList<>();
+        private final List<String> nodeFeatures = new ArrayList<>();
+        private final List<Long> nodeVisits = new ArrayList<>();
+
+        // Returns the number of TextBlocks parsed
+        public long getParseCount() {
+            return parse.getCount();
+        }
+
+        // Returns the TextBlock parse time in nanoseconds at the given percentile (0 to 100)
+        public long getParseNanos(double percentile) {
+            return parse.getPercentile(percentile);
+        }
+
+        // Returns the number of classify calls
+        public long getClassifyCount() {
+            return classify.getCount();
+        }
+
+        // Returns the classify time in nanoseconds at the given percentile (0 to 100)
+        public long getClassifyNanos(double percentile) {
+            return classify.getPercentile(percentile);
+        }
+
+        // Returns the number of branches classify visited at the given percentile (0 to 100)
+        public long getPathDepth(double percentile) {
+            return depth.getPercentile(percentile);
+        }
+
+        // Returns the visit count of every node of the tracked classifier, in the same
+        //      pre-order as Classifier.getNodeVisits, or an empty array if none is tracked
+        public long[] getNodeVisits() {
+            long[] visits = new long[nodeVisits.size()];
+            for (int i = 0; i < visits.length; i++) {
+                visits[i] = nodeVisits.get(i);
+            }
+            return visits;
+        }
+
+        // Returns up to 'count' of the tracked classifier's most visited nodes, most visited
+        //      first, each as "node <pre-order index> (<description>): <visits>"
+        public List<String> getHottestNodes(int count) {
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < nodeVisits.size(); i++) {
+                order.add(i);
+            }
+            order.sort((a, b) -> Long.compare(nodeVisits.get(b), nodeVisits.get(a)));
+            List<String> hottest = new ArrayList<>();
+            for (int i = 0; i < Math.min(count, order.size()); i++) {
+                int node = order.get(i);
+                hottest.add("node " + node + " (" + nodeNames.get(node) + "): "
+                            + nodeVisits.get(node));
+            }
+            return hottest;
+        }
+
+        // Returns up to 'count' of the features the tracked classifier branched on most often,
+        //      adding up the visits of every branch on the same feature, most visited first,
+        //      each as "<feature>: <visits>"
+        public List<String> getHottestFeatures(int count) {
+            Map<String, Long> features = new HashMap<>();
+            for (int i = 0; i < nodeFeatures.size(); i++) {
+                if (nodeFeatures.get(i) != null) {
+                    features.merge(nodeFeatures.get(i), nodeVisits.get(i), Long::sum);
+                }
+            }
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(features.entrySet());
+            entries.sort((a, b) -> b.getValue() != a.getValue().longValue()
+                                   ? Long.compare(b.getValue(), a.getValue())
+                                   : a.getKey().compareTo(b.getKey()));
+            List<String> hottest = new ArrayList<>();
+            for (int i = 0; i < Math.min(count, entries.size()); i++) {
+                hottest.add(entries.get(i).getKey() + ": " + entries.get(i).getValue());
+            }
+            return hottest;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,21 @@
+// JMX management interface of ClassifierMetrics. Latencies are in nanoseconds.
+public interface ClassifierMetricsMBean {
+    // Whether metrics are currently being recorded
+    boolean isRecording();
+    void setRecording(boolean on);
+
+    long getParseCount();
+    long getParseNanosP50();
+    long getParseNanosP99();
+    long getClassifyCount();
+    long getClassifyNanosP50();
+    long getClassifyNanosP99();
+    long getPathDepthP50();
+    long getPathDepthMax();
+    // Most visited nodes and branch features of the tracked classifier, most visited first
+    String[] getHottestNodes();
+    String[] getHottestFeatures();
+
+    // Discards everything recorded so far
+    void reset();
+}
@@ -0,0 +1,376 @@
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// This class represents a headless classification server that loads a model once and serves
+//      classify requests over HTTP on the loopback interface.
+// Endpoints:
+//      POST /classify - the body is UTF-8 text with one message per line; the response has
+//                       the predicted label of each message, one per line, in the same order
+//      GET  /health   - responds "ok" and the number of times the model has been (re)loaded
+// Requests are handled on virtual threads when the JVM has them (Java 21+) and on a thread
+//      pool otherwise. Messages from concurrent requests are queued and classified together
+//      in batches with Classifier.classifyAll, so a burst of small requests uses every core.
+// The model file is polled for changes and reloaded in the background; requests keep using
+//      the previous model until the new one has loaded successfully. Every load gets its own
+//      FeatureDictionary, and request messages are parsed with TextBlock.forClassification,
+//      so neither traffic nor reloads grow the heap over time.
+// Usage: java ClassifierServer <model> [port]
+//      model - a binary model file or a tree in the Classifier.save text format
+//      port  - port to listen on (default 8123, 0 picks a free port)
+// Usage: java ClassifierServer selfcheck [rows]
+//      Trains a model on 'rows' synthetic messages (default 20000), serves it on a free
+//      localhost port, and checks concurrent requests, dictionary growth and a hot reload
+//      against the model classifying directly, failing if anything disagrees.
+public class ClassifierServer {
+    public static final int DEFAULT_PORT = 8123;
+    public static final int MAX_BATCH = 4096;
+    public static final long RELOAD_MILLIS = 1000;
+    public static final int SELF_CHECK_CLIENTS = 8;
+    public static final int SELF_CHECK_LINES = 50;
+
+    private final String modelPath;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService reloader;
+    private final Thread batcher;
+    private final BlockingQueue<Request> queue;
+    private volatile Classifier model;
+    private volatile int loads;
+    private FileTime loadedModified;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: java ClassifierServer <model> [port]");
+            System.out.println("       java ClassifierServer selfcheck [rows]");
+            return;
+        }
+        if (args[0].equals("selfcheck")) {
+            selfCheck(args.length > 1 ? Integer.parseInt(args[1]) : 20000);
+            return;
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        ClassifierServer server = new ClassifierServer(args[0], port);
+        server.start();
+        System.out.println("Serving " + args[0] + " on http://127.0.0.1:" + server.getPort()
+                           + "/classify");
+    }
+
+    // Constructs a new ClassifierServer for the model at 'modelPath', bound to the given port
+    //      on the loopback interface. The model is loaded right away; call start to begin
+    //      serving.
+    // Throws an IllegalArgumentException
+    //      If modelPath is null or port is outside [0, 65535]
+    // Throws an IOException
+    //      If the model can't be loaded or the port can't be bound
+    public ClassifierServer(String modelPath, int port) throws IOException {
+        if (modelPath == null || port < 0 || port > 65535) {
+            throw new IllegalArgumentException();
+        }
+        this.modelPath = modelPath;
+        this.loadedModified = Files.getLastModifiedTime(Paths.get(modelPath));
+        this.model = load(modelPath);
+        this.loads = 1;
+        this.queue = new LinkedBlockingQueue<>();
+        this.handlers = newHandlerExecutor();
+        this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "model-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batcher = new Thread(this::runBatches, "classify-batcher");
+        this.batcher.setDaemon(true);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                                              port), 0);
+        server.createContext("/classify", this::handleClassify);
+        server.createContext("/health", this::handleHealth);
+        server.setExecutor(handlers);
+    }
+
+    // Starts serving requests and watching the model file for changes
+    public void start() {
+        batcher.start();
+        reloader.scheduleWithFixedDelay(this::reloadIfChanged, RELOAD_MILLIS, RELOAD_MILLIS,
+                                        TimeUnit.MILLISECONDS);
+        server.start();
+    }
+
+    // Stops serving requests, waiting up to 'delaySeconds' for requests in flight to finish
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        reloader.shutdownNow();
+        batcher.interrupt();
+        handlers.shutdownNow();
+    }
+
+    // Returns the port this server is listening on
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Returns the number of times the model has been loaded, counting the initial load
+    public int getLoadCount() {
+        return loads;
+    }
+
+    // Helper method - answers POST /classify with one label per line of the request body
+    private void handleClassify(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "Use POST\n");
+                return;
+            }
+            String body = new String(exchange.getRequestBody().readAllBytes(),
+                                     StandardCharsets.UTF_8);
+            Classifier current = model;
+            List<Request> requests = new ArrayList<>();
+            for (String line : body.split("\r?\n")) {
+                if (!line.isEmpty()) {
+                    Request request = new Request(line, TextBlock.forClassification(line,
+                                                  current.getDictionary()));
+                    requests.add(request);
+                    queue.add(request);
+                }
+            }
+            StringBuilder response = new StringBuilder();
+            for (Request request : requests) {
+                response.append(request.result.get()).append('\n');
+            }
+            respond(exchange, 200, response.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "Server is shutting down\n");
+        } catch (ExecutionException e) {
+            respond(exchange, 500, "Classification failed: " + e.getCause() + "\n");
+        }
+    }
+
+    // Helper method - answers GET /health
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "ok, model loaded " + loads + " time(s)\n");
+    }
+
+    // Helper method - sends a plain text response and closes the exchange
+    private static void respond(HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Helper method - runs on the batcher thread: waits for queued messages, then classifies
+    //      everything queued so far (up to MAX_BATCH) with one classifyAll call
+    private void runBatches() {
+        List<Request> batch = new ArrayList<>();
+        List<TextBlock> blocks = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                Classifier current = model;
+                for (Request request : batch) {
+                    // the model may have been reloaded with a new dictionary since parsing
+                    TextBlock block = request.block;
+                    if (block.getDictionary() != current.getDictionary()) {
+                        block = TextBlock.forClassification(request.message,
+                                                            current.getDictionary());
+                    }
+                    blocks.add(block);
+                }
+                try {
+                    List<String> labels = current.classifyAll(blocks);
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).result.complete(labels.get(i));
+                    }
+                } catch (RuntimeException e) {
+                    for (Request request : batch) {
+                        request.result.completeExceptionally(e);
+                    }
+                }
+                batch.clear();
+                blocks.clear();
+            }
+        } catch (InterruptedException e) {
+            for (Request request : batch) {
+                request.result.cancel(false);
+            }
+        }
+    }
+
+    // Helper method - reloads the model if its file changed since it was last loaded. If the
+    //      new file can't be loaded (for example because it is still being written), the
+    //      current model stays in use and loading is retried on the next poll.
+    private void reloadIfChanged() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(Paths.get(modelPath));
+            if (!modified.equals(loadedModified)) {
+                model = load(modelPath);
+                loadedModified = modified;
+                loads++;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Couldn't reload " + modelPath + ": " + e);
+        }
+    }
+
+    // Helper method - loads the model at 'path' in either the binary or the text format,
+    //      into a new FeatureDictionary so the previous model's vocabulary can be collected
+    private static Classifier load(String path) throws IOException {
+        FeatureDictionary dictionary = new FeatureDictionary();
+        if (ModelFile.isModelFile(path)) {
+            return new Classifier(ModelFile.readCompiled(path, dictionary));
+        }
+        try (Scanner input = new Scanner(new File(path))) {
+            return new Classifier(input, dictionary);
+        }
+    }
+
+    // Helper method - trains a model on synthetic messages and checks a server for it over
+    //      localhost: concurrent requests must get the labels the model predicts directly,
+    //      unseen words must not grow the model's dictionary, and replacing the model file
+    //      must switch requests over to the new model
+    // Throws an IllegalStateException
+    //      If any of those checks fails
+    private static void selfCheck(int rows) throws IOException, InterruptedException {
+        List<String> labels = new ArrayList<>();
+        List<String> messages = Benchmark.syntheticMessages(rows, 5000, 1.0, Benchmark.SEED,
+                                                            labels);
+        FeatureDictionary trainDictionary = new FeatureDictionary();
+        List<TextBlock> data = new ArrayList<>();
+        for (String message : messages) {
+            data.add(new TextBlock(message, trainDictionary));
+        }
+        Path modelPath = Files.createTempFile("selfcheck", ".model");
+        ModelFile.write(new Classifier(data, labels), modelPath.toString());
+        ClassifierServer server = new ClassifierServer(modelPath.toString(), 0);
+        server.start();
+        try {
+            // every client sends known messages, each with a word no model has seen
+            List<String> sent = new ArrayList<>();
+            for (int i = 0; i < SELF_CHECK_CLIENTS * SELF_CHECK_LINES; i++) {
+                sent.add(messages.get(i % messages.size()) + " unseen" + i);
+            }
+            int dictionarySize = server.model.getDictionary().size();
+            checkResponses(server, sent);
+            if (server.model.getDictionary().size() != dictionarySize) {
+                throw new IllegalStateException("Requests grew the model's dictionary");
+            }
+            System.out.printf("%d concurrent requests of %d messages match the model%n",
+                              SELF_CHECK_CLIENTS, SELF_CHECK_LINES);
+
+            // retrain with every label flipped, so the reloaded model must answer differently
+            List<String> flipped = new ArrayList<>();
+            for (String label : labels) {
+                flipped.add(label.equals("spam") ? "ham" : "spam");
+            }
+            Classifier previous = server.model;
+            FileTime modified = Files.getLastModifiedTime(modelPath);
+            ModelFile.write(new Classifier(data, flipped), modelPath.toString());
+            Files.setLastModifiedTime(modelPath, FileTime.fromMillis(modified.toMillis() + 2000));
+            long deadline = System.currentTimeMillis() + 10 * RELOAD_MILLIS;
+            while (server.getLoadCount() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(RELOAD_MILLIS / 10);
+            }
+            if (server.getLoadCount() < 2
+                    || server.model.getDictionary() == previous.getDictionary()) {
+                throw new IllegalStateException("Model wasn't reloaded into a new dictionary");
+            }
+            checkResponses(server, sent);
+            System.out.println("Reloaded model serves the new labels");
+            System.out.println("Self-check passed");
+        } finally {
+            server.stop(0);
+            Files.deleteIfExists(modelPath);
+        }
+    }
+
+    // Helper method - posts 'messages' to the server from SELF_CHECK_CLIENTS threads at once,
+    //      SELF_CHECK_LINES per request, and checks every label against the server's model
+    private static void checkResponses(ClassifierServer server, List<String> messages)
+            throws InterruptedException {
+        Classifier expectedModel = server.model;
+        ExecutorService clients = Executors.newFixedThreadPool(SELF_CHECK_CLIENTS);
+        try {
+            List<Future<List<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < messages.size(); i += SELF_CHECK_LINES) {
+                List<String> lines = messages.subList(i, Math.min(messages.size(),
+                                                                  i + SELF_CHECK_LINES));
+                responses.add(clients.submit(() -> post(server.getPort(), lines)));
+            }
+            for (int i = 0; i < responses.size(); i++) {
+                List<String> labels = responses.get(i).get();
+                for (int j = 0; j < labels.size(); j++) {
+                    String message = messages.get(i * SELF_CHECK_LINES + j);
+                    String expected = expectedModel.classify(TextBlock.forClassification(
+                            message, expectedModel.getDictionary()));
+                    if (!labels.get(j).equals(expected)) {
+                        throw new IllegalStateException("Server answered " + labels.get(j)
+                                                        + " but the model predicts " + expected);
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Request failed", e.getCause());
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    // Helper method - posts the given lines to /classify on localhost and returns the labels
+    //      in the response
+    private static List<String> post(int port, List<String> lines) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + port + "/classify");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        }
+        if (connection.getResponseCode() != 200) {
+            throw new IOException("HTTP " + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return Arrays.asList(body.split("\n"));
+        }
+    }
+
+    // Helper method - returns an executor that runs each request on its own virtual thread
+    //      if this JVM supports them, or on a pool of platform threads otherwise
+    private static ExecutorService newHandlerExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // handlers mostly wait on their batch, so allow many more threads than cores
+            return Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors() * 16, runnable -> {
+                        Thread thread = new Thread(runnable, "classify-handler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    // This class represents one message waiting to be classified
+    private static class Request {
+        private final String message;
+        private final TextBlock block;
+        private final CompletableFuture<String> result;
+
+        private Request(String message, TextBlock block) {
+            this.message = message;
+            this.block = block;
+            this.result = new CompletableFuture<>();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 import java.util.*;
 import java.util.function.*;
+import java.util.stream.*;
 import java.io.*;
 
 // Client class for interaction with Classifiers
@@ -15,7 +16,15 @@ public class Client {
     // index 1 corresponds with the second column: Message
     public static final int CONTENT_INDEX = 1;
 
-    public static void main(String[] args) throws FileNotFoundException {
+    // Seed for shuffling the training data. Training with the same seed and file always
+    // produces the same model.
+    public static final long TRAINING_SEED = 123;
+
+    // Limits on the trees grown by IndexedTrainer
+    public static final int INDEXED_MAX_DEPTH = 16;
+    public static final int INDEXED_MIN_LEAF = 5;
+
+    public static void main(String[] args) throws IOException {
         Scanner console = new Scanner(System.in);
 
         printBanner();
@@ -62,10 +71,16 @@ public class Client {
                     "classification tree to console?");
                 System.out.println("1) Save to a file");
                 System.out.println("2) Output classification tree to console");
+                System.out.println("3) Save to a binary model file");
                 choice = console.nextInt();
                 if (choice == 1) {
                     System.out.print("Please enter the file name you'd like to save to: ");
                     c.save(new PrintStream(console.next() + ".txt"));
+                } else if (choice == 3) {
+                    System.out.print("Please enter the file name you'd like to save to: ");
+                    String path = console.next() + ".model";
+                    ModelFile.write(c, path);
+                    System.out.printf("Saved with checksum %08x%n", ModelFile.checksum(path));
                 } else {
                     System.out.println();
                     System.out.println("Save output:");
@@ -77,35 +92,39 @@ public class Client {
     }
 
     // Creates a classifier from a client provided information by either:
-    //      Loading a previously created model file or
+    //      Loading a previously created model file (text or binary) or
     //      Training a model from a provided dataset
     // Requires a Scanner connected to the console to retrieve user input
     // Throws a FileNotFoundException
     //      If one of the client provided files doesn't exist
-    private static Classifier createModel(Scanner console) throws FileNotFoundException {
+    // Throws an IOException
+    //      If a binary model file can't be read
+    private static Classifier createModel(Scanner console) throws IOException {
         System.out.println("1) Train classification model (Two List Constructor)");
-        System.out.println("2) Load model from file (Scanner Constructor)");
+        System.out.println("2) Load model from file (Scanner Constructor or binary model file)");
+        System.out.println("3) Train classification model (IndexedTrainer)");
         System.out.print("Enter your choice here: ");
 
         int choice = console.nextInt();
-        while (choice != 1 && choice != 2) {
+        while (choice != 1 && choice != 2 && choice != 3) {
             System.out.print("Please enter a valid option from above: ");
             choice = console.nextInt();
         }
 
-        if (choice == 1) {
+        if (choice == 3) {
+            DataLoader loader = DataLoader.loadParallel(TRAIN_FILE, LABEL_INDEX, CONTENT_INDEX);
+            return new IndexedTrainer(INDEXED_MAX_DEPTH, INDEXED_MIN_LEAF)
+                    .train(loader.getData(), loader.getLabels());
+        } else if (choice == 1) {
             System.out.println();
             System.out.println("Would you like to shuffle the data?");
             System.out.println("1) Yes (Recommended for testing finalized models)");
             System.out.println("2) No  (Recommended for debugging models)");
             choice = console.nextInt();
-            if (choice == 1) {
-                DataLoader loader = new DataLoader(TRAIN_FILE, LABEL_INDEX, CONTENT_INDEX, true);
-                return new Classifier(loader.getData(), loader.getLabels());
-            } else {
-                DataLoader loader = new DataLoader(TRAIN_FILE, LABEL_INDEX, CONTENT_INDEX, false);
-                return new Classifier(loader.getData(), loader.getLabels());
-            }
+            TrainingConfig config = new TrainingConfig(TRAINING_SEED, choice == 1, true);
+            DataLoader loader = new DataLoader(TRAIN_FILE, LABEL_INDEX, CONTENT_INDEX, config);
+            System.out.println("Training with " + config);
+            return new Classifier(loader.getData(), loader.getLabels());
         } else {
             System.out.println("Please enter the path to the file you'd like to load");
             System.out.println("Example: \"./trees/simple.txt\"");
@@ -114,6 +133,9 @@ public class Client {
             if (path.charAt(0) == '\"' && path.charAt(path.length() - 1) == '\"') {
                 path = path.substring(1, path.length() - 1);
             }
+            if (ModelFile.isModelFile(path)) {
+                return ModelFile.read(path);
+            }
             Scanner input = new Scanner(new File(path));
             return new Classifier(input);
         }
@@ -124,24 +146,25 @@ public class Client {
     // Throws a FileNotFoundException
     //      If the provided testing dataset file doesn't exist
     private static void evalModel(Classifier c, String fileName) throws FileNotFoundException {
-        DataLoader loader = new DataLoader(fileName, LABEL_INDEX, CONTENT_INDEX, true);
-        List<String> results = new ArrayList<>();
-        for (TextBlock data : loader.getData()) {
-            results.add(c.classify(data));
+        List<TextBlock> data;
+        try (Stream<LabeledTextBlock> rows = DataLoader.streamForClassification(fileName,
+                LABEL_INDEX, CONTENT_INDEX, c.getDictionary())) {
+            data = rows.map(LabeledTextBlock::getBlock).collect(Collectors.toList());
         }
+        Collections.shuffle(data, DataLoader.RAND);
+        List<String> results = c.classifyAll(data);
         System.out.println("Results: " + results);
     }
 
     // Tests the given Classifier on the datapoints within the given testing file, printing out the
-    //      accuracies for labels encountered during testing
+    //      overall accuracy, per-label precision/recall/F1 (recall is the accuracy for that
+    //      label), the confusion matrix and classify latencies
     // Throws a FileNotFoundException
     //      If the provided testing dataset file doesn't exist
     private static void testModel(Classifier c, String fileName) throws FileNotFoundException {
-        DataLoader loader = new DataLoader(fileName, LABEL_INDEX, CONTENT_INDEX, true);
-        Map<String, Double> labelToAccuracy = c.calculateAccuracy(loader.getData(),
-                                                                  loader.getLabels());
-        for (String label : labelToAccuracy.keySet()) {
-            System.out.println(label + ": " + labelToAccuracy.get(label));
+        try (Stream<LabeledTextBlock> rows = DataLoader.streamForClassification(fileName,
+                LABEL_INDEX, CONTENT_INDEX, c.getDictionary())) {
+            System.out.print(Evaluation.evaluate(c, rows));
         }
     }
 
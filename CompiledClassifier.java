@@ -0,0 +1,182 @@
+import java.util.*;
+
+// This class represents a read-only, flattened copy of a Classifier's decision tree.
+// Nodes are packed into parallel primitive arrays in breadth-first order (the root is
+//      node 0) and classification walks them with a simple loop instead of following
+//      object pointers one recursive call at a time.
+// Produces exactly the same labels as the Classifier it was compiled from.
+// Batches can be classified with classifyIndexes, which walks several inputs down the tree
+//      in lockstep, either in scalar lanes or, when built with the vector Maven profile and
+//      run with --add-modules jdk.incubator.vector, in Vector API lanes. Neither has beaten
+//      classifyIndex one input at a time in our benchmarks; they are kept so the lane widths
+//      can be measured again on other hardware (see BatchBenchmarks).
+public class CompiledClassifier {
+    // the Vector API lane walker, or null if it wasn't built or its module isn't loaded
+    private static final LaneWalker VECTOR_LANES = loadVectorLanes();
+
+    private final FeatureDictionary dictionary;
+    // node arrays are package-private so ModelFile can write them out without copying
+    final int[] features;
+    final double[] thresholds;
+    final int[] left;
+    final int[] right;
+    final int[] labelIds;
+    final String[] labels;
+
+    // Constructs a CompiledClassifier from already packed node arrays. For every node i,
+    //      labelIds[i] is -1 for a branch node and an index into 'labels' for a leaf node.
+    //      Branch nodes send inputs whose value for features[i] is < thresholds[i] to
+    //      left[i] and everything else to right[i].
+    CompiledClassifier(FeatureDictionary dictionary, int[] features, double[] thresholds,
+                       int[] left, int[] right, int[] labelIds, String[] labels) {
+        this.dictionary = dictionary;
+        this.features = features;
+        this.thresholds = thresholds;
+        this.left = left;
+        this.right = right;
+        this.labelIds = labelIds;
+        this.labels = labels;
+    }
+
+    // Returns the label this compiled tree predicts for the given input
+    // Throws an IllegalArgumentException
+    //      If input is null or doesn't share this tree's FeatureDictionary
+    public String classify(TextBlock input) {
+        return labels[classifyIndex(input)];
+    }
+
+    // Returns the index into getLabels() of the label this compiled tree predicts for the
+    //      given input
+    // Throws an IllegalArgumentException
+    //      If input is null or doesn't share this tree's FeatureDictionary
+    public int classifyIndex(TextBlock input) {
+        if (input == null || input.getDictionary() != dictionary) {
+            throw new IllegalArgumentException();
+        }
+        int node = 0;
+        while (labelIds[node] < 0) {
+            if (input.get(features[node]) < thresholds[node]) {
+                node = left[node];
+            } else {
+                node = right[node];
+            }
+        }
+        return labelIds[node];
+    }
+
+    // Returns the index into getLabels() of the label this compiled tree predicts for each of
+    //      the given inputs. Inputs are taken 'lanes' at a time and advanced one level per
+    //      step together: each step looks up every lane's value for its current node, then
+    //      picks every lane's child. Lanes that reach a leaf early stop moving.
+    //      With 'lanes' = 1 this is the same walk as classifyIndex.
+    // Throws an IllegalArgumentException
+    //      If inputs is null, lanes < 1, or any input is null or doesn't share this tree's
+    //      FeatureDictionary
+    public int[] classifyIndexes(List<TextBlock> inputs, int lanes) {
+        if (inputs == null || lanes < 1) {
+            throw new IllegalArgumentException();
+        }
+        int[] results = new int[inputs.size()];
+        TextBlock[] lane = new TextBlock[lanes];
+        int[] node = new int[lanes];
+        for (int base = 0; base < results.length; base += lanes) {
+            int width = Math.min(lanes, results.length - base);
+            for (int l = 0; l < width; l++) {
+                lane[l] = checked(inputs.get(base + l));
+                node[l] = 0;
+            }
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                for (int l = 0; l < width; l++) {
+                    int current = node[l];
+                    if (labelIds[current] < 0) {
+                        boolean goLeft = lane[l].get(features[current]) < thresholds[current];
+                        node[l] = goLeft ? left[current] : right[current];
+                        moved = true;
+                    }
+                }
+            }
+            for (int l = 0; l < width; l++) {
+                results[base + l] = labelIds[node[l]];
+            }
+        }
+        return results;
+    }
+
+    // Returns the index into getLabels() of the label this compiled tree predicts for each of
+    //      the given inputs, walking vectorLanes() inputs at a time with the Vector API. Falls
+    //      back to classifyIndexes(inputs, 1) when the Vector API lanes aren't available.
+    // Throws an IllegalArgumentException
+    //      If inputs is null, or any input is null or doesn't share this tree's
+    //      FeatureDictionary
+    public int[] classifyIndexesVector(List<TextBlock> inputs) {
+        if (VECTOR_LANES == null) {
+            return classifyIndexes(inputs, 1);
+        }
+        if (inputs == null) {
+            throw new IllegalArgumentException();
+        }
+        for (TextBlock input : inputs) {
+            checked(input);
+        }
+        return VECTOR_LANES.classifyIndexes(this, inputs);
+    }
+
+    // Returns the number of inputs classifyIndexesVector walks together, or 0 if it falls back
+    //      to scalar lanes because the vector profile wasn't built or jdk.incubator.vector
+    //      isn't loaded
+    public static int vectorLanes() {
+        return VECTOR_LANES == null ? 0 : VECTOR_LANES.lanes();
+    }
+
+    // Returns every label this tree can predict, indexed as classifyIndex returns them
+    public List<String> getLabels() {
+        return Collections.unmodifiableList(Arrays.asList(labels));
+    }
+
+    // Returns the FeatureDictionary this tree's feature ids come from
+    public FeatureDictionary getDictionary() {
+        return dictionary;
+    }
+
+    // Returns the number of nodes (branches and leaves) in this tree
+    public int size() {
+        return labelIds.length;
+    }
+
+    // Helper method - returns 'input' if this tree can classify it
+    // Throws an IllegalArgumentException
+    //      If input is null or doesn't share this tree's FeatureDictionary
+    private TextBlock checked(TextBlock input) {
+        if (input == null || input.getDictionary() != dictionary) {
+            throw new IllegalArgumentException();
+        }
+        return input;
+    }
+
+    // Helper method - returns the VectorLanes walker built by the vector profile, or null if
+    //      it isn't on the classpath or the jdk.incubator.vector module isn't loaded
+    private static LaneWalker loadVectorLanes() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return null;
+        }
+        try {
+            return (LaneWalker) Class.forName("VectorLanes").getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // This interface represents a way of walking a batch of inputs down a compiled tree
+    //      together, implemented outside the default build (see VectorLanes)
+    interface LaneWalker {
+        // Returns the number of inputs walked together
+        int lanes();
+
+        // Returns the label index 'tree' predicts for each of 'inputs', which are already
+        //      checked to share its dictionary
+        int[] classifyIndexes(CompiledClassifier tree, List<TextBlock> inputs);
+    }
+}
\ No newline at end of file
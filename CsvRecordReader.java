@@ -0,0 +1,294 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+// This class represents a streaming reader of RFC-4180 CSV records. Records are parsed one
+//      at a time straight from the underlying Reader, so only the current record is ever
+//      held in memory.
+// Fields are separated by commas and records by CRLF or LF. Fields wrapped in double quotes
+//      may contain commas, line breaks and escaped quotes ("").
+// Large files can be split into byte ranges that each hold whole records (see split) and
+//      parsed in parallel, one CsvRecordReader per range.
+public class CsvRecordReader implements Iterator<List<String>>, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int SCAN_WINDOW = 1 << 20;
+
+    // byte classes and parser states used to find record boundaries without parsing fields
+    private static final int QUOTE = 0, COMMA = 1, LF = 2, CR = 3, OTHER = 4;
+    private static final int FIELD_START = 0, UNQUOTED = 1, QUOTED = 2, QUOTE_IN_QUOTED = 3,
+                             AFTER_CR = 4;
+    private static final int STATES = 5;
+    // NEXT_STATE[state][byte class] mirrors the branches of readRecord
+    private static final int[][] NEXT_STATE = {
+        // QUOTE            COMMA        LF           CR        OTHER
+        {QUOTED,            FIELD_START, FIELD_START, AFTER_CR, UNQUOTED},  // FIELD_START
+        {UNQUOTED,          FIELD_START, FIELD_START, AFTER_CR, UNQUOTED},  // UNQUOTED
+        {QUOTE_IN_QUOTED,   QUOTED,      QUOTED,      QUOTED,   QUOTED},    // QUOTED
+        {QUOTED,            FIELD_START, FIELD_START, AFTER_CR, UNQUOTED},  // QUOTE_IN_QUOTED
+        {QUOTED,            FIELD_START, FIELD_START, AFTER_CR, UNQUOTED},  // AFTER_CR
+    };
+
+    private final Reader reader;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+    private List<String> next;
+
+    // Constructs a new CsvRecordReader that parses records from the given Reader
+    // 'reader' should be non-null.
+    public CsvRecordReader(Reader reader) {
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+    }
+
+    // Opens a CsvRecordReader over the UTF-8 file at the given path, reading it through a
+    //      FileChannel
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist
+    public static CsvRecordReader open(String filePath) throws FileNotFoundException {
+        try {
+            FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+            return new CsvRecordReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(filePath);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Opens a CsvRecordReader over the UTF-8 bytes [start, end) of the given file, which
+    //      should come from split so the range holds whole records
+    // 'channel' should be non-null and open for reading.
+    // Throws an UncheckedIOException
+    //      If the file can't be read
+    public static CsvRecordReader open(FileChannel channel, long start, long end) {
+        CharBuffer chars = StandardCharsets.UTF_8.decode(map(channel, start, end));
+        return new CsvRecordReader(new CharArrayReader(chars.array(),
+                chars.arrayOffset() + chars.position(), chars.remaining()));
+    }
+
+    // Returns the offsets that split the given file into at most 'parts' byte ranges of
+    //      about equal size, each starting on a record boundary: the first offset is 0, the
+    //      last is the file size, and range i is [offsets[i], offsets[i + 1]).
+    //      Quoted fields are accounted for, so a line break inside quotes never ends a range.
+    // The parser state at the start of each raw range is found without a sequential scan:
+    //      every range is scanned in parallel from every possible starting state, and the
+    //      results are chained together from the start of the file.
+    // 'channel' should be non-null and open for reading, and 'parts' should be at least 1.
+    // Throws an UncheckedIOException
+    //      If the file can't be read
+    public static long[] split(FileChannel channel, int parts) {
+        long size;
+        try {
+            size = channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long step = Math.max(1, (size + parts - 1) / parts);
+        int ranges = (int) ((size + step - 1) / step);
+        int[][] endStates = IntStream.range(0, ranges).parallel()
+                .mapToObj(i -> endStates(map(channel, i * step, Math.min(size, (i + 1) * step))))
+                .toArray(int[][]::new);
+        int[] startStates = new int[ranges];
+        int state = FIELD_START;
+        for (int i = 0; i < ranges; i++) {
+            startStates[i] = state;
+            state = endStates[i][state];
+        }
+        long[] boundaries = IntStream.range(1, ranges).parallel()
+                .mapToLong(i -> nextRecordStart(channel, i * step, startStates[i], size))
+                .toArray();
+
+        // a record longer than a range can push a boundary past the next one, so drop repeats
+        List<Long> offsets = new ArrayList<>();
+        offsets.add(0L);
+        for (long boundary : boundaries) {
+            if (boundary > offsets.get(offsets.size() - 1)) {
+                offsets.add(boundary);
+            }
+        }
+        if (offsets.get(offsets.size() - 1) < size) {
+            offsets.add(size);
+        }
+        long[] result = new long[offsets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = offsets.get(i);
+        }
+        return result;
+    }
+
+    // Returns true if there is another record to read
+    // Throws an UncheckedIOException
+    //      If the underlying Reader fails
+    public boolean hasNext() {
+        if (next == null) {
+            next = readRecord();
+        }
+        return next != null;
+    }
+
+    // Returns the fields of the next record
+    // Throws a NoSuchElementException
+    //      If there are no records left
+    public List<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<String> record = next;
+        next = null;
+        return record;
+    }
+
+    // Closes the underlying Reader
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Helper method - parses the next record, or returns null at the end of input
+    private List<String> readRecord() {
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    // unterminated quote, keep what we have
+                    fields.add(field.toString());
+                    return fields;
+                } else if (c == '"') {
+                    int peek = read();
+                    if (peek == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = peek;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                fields.add(field.toString());
+                return fields;
+            } else if (c == '\r') {
+                int peek = read();
+                if (peek != '\n' && peek != -1) {
+                    position--;
+                }
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    // Helper method - returns the next char of input, or -1 at the end of input
+    private int read() {
+        if (position == limit) {
+            try {
+                limit = reader.read(buffer, 0, buffer.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    // Helper method - returns, for every parser state, the state the parser would be in after
+    //      reading 'bytes' starting from it
+    private static int[] endStates(ByteBuffer bytes) {
+        int[] states = new int[STATES];
+        for (int i = 0; i < STATES; i++) {
+            states[i] = i;
+        }
+        int position = 0;
+        int limit = bytes.limit();
+        // the starting states usually converge within a few bytes, after which one is enough
+        while (position < limit && !converged(states)) {
+            int type = classOf(bytes.get(position++));
+            for (int i = 0; i < STATES; i++) {
+                states[i] = NEXT_STATE[states[i]][type];
+            }
+        }
+        int state = states[0];
+        while (position < limit) {
+            state = NEXT_STATE[state][classOf(bytes.get(position++))];
+        }
+        if (converged(states)) {
+            Arrays.fill(states, state);
+        }
+        return states;
+    }
+
+    // Helper method - returns the offset just past the first line break at or after 'start'
+    //      that ends a record, given the parser state at 'start', or 'size' if none does
+    private static long nextRecordStart(FileChannel channel, long start, int state, long size) {
+        for (long offset = start; offset < size; offset += SCAN_WINDOW) {
+            ByteBuffer window = map(channel, offset, Math.min(size, offset + SCAN_WINDOW));
+            for (int i = 0; i < window.limit(); i++) {
+                int type = classOf(window.get(i));
+                if (type == LF && state != QUOTED) {
+                    return offset + i + 1;
+                }
+                state = NEXT_STATE[state][type];
+            }
+        }
+        return size;
+    }
+
+    // Helper method - returns true if every entry of 'states' is the same
+    private static boolean converged(int[] states) {
+        for (int i = 1; i < states.length; i++) {
+            if (states[i] != states[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Helper method - returns the byte class of 'b'. Bytes of multi-byte UTF-8 characters are
+    //      never ASCII, so they are always OTHER.
+    private static int classOf(byte b) {
+        switch (b) {
+            case '"':
+                return QUOTE;
+            case ',':
+                return COMMA;
+            case '\n':
+                return LF;
+            case '\r':
+                return CR;
+            default:
+                return OTHER;
+        }
+    }
+
+    // Helper method - memory-maps the bytes [start, end) of the given file
+    private static MappedByteBuffer map(FileChannel channel, long start, long end) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
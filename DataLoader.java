@@ -1,17 +1,25 @@
 import java.util.*;
 import java.util.function.*;
+import java.util.stream.*;
 import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 
 // This class represents a DataLoader capable of loading both data and labels from
 // A provided CSV file and manages them accordingly
 public class DataLoader {
+    // loadParallel aims for byte ranges of about this size, so each worker gets several
+    private static final long CHUNK_BYTES = 1 << 24;
+    // ... but doesn't split files into ranges smaller than this
+    private static final long MIN_CHUNK_BYTES = 1 << 16;
+
     private List<TextBlock> data;
     private List<String> labels;
 
     // Constructs a new DataLoader storing from the given file, where labels
     //      are taken from the given index, using the given 'contentIndex' to convert a
     //      particular row into the desired datapoint. Additionally, can choose to shuffle
-    //      the data in the file.
+    //      the data in the file. The first row of the file is a header and is skipped.
     // 'filePath' should be non-null.
     // Throws a FileNotFoundException
     //      If the provided file doesn't exist
@@ -19,17 +27,172 @@ public class DataLoader {
                       throws FileNotFoundException {
         this.data = new ArrayList<>();
         this.labels = new ArrayList<>();
-        
-        List<List<String>> rows = CsvReader.read(filePath);
-        for (List<String> row : rows) {
-            this.data.add(new TextBlock(row.get(contentIndex)));
-            this.labels.add(row.get(labelIndex));
+
+        try (Stream<LabeledTextBlock> rows = DataLoader.stream(filePath, labelIndex, contentIndex)) {
+            rows.forEach(row -> {
+                this.data.add(row.getBlock());
+                this.labels.add(row.getLabel());
+            });
         }
         if (shuffle) {
             DataLoader.shuffle(this);
         }
     }
 
+    // Constructs a new DataLoader storing the data points in the given file, where labels are
+    //      taken from the given index and TextBlocks are built from the column at
+    //      'contentIndex'. The data is loaded and shuffled as 'config' says, shuffling with
+    //      its SHUFFLE seed, so the same file and config always give the same order. The
+    //      first row of the file is a header and is skipped.
+    // 'filePath' and 'config' should be non-null.
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist
+    public DataLoader(String filePath, int labelIndex, int contentIndex, TrainingConfig config)
+                      throws FileNotFoundException {
+        if (config.isParallelLoad()) {
+            DataLoader loader = loadParallel(filePath, labelIndex, contentIndex);
+            this.data = loader.data;
+            this.labels = loader.labels;
+        } else {
+            this.data = new ArrayList<>();
+            this.labels = new ArrayList<>();
+            try (Stream<LabeledTextBlock> rows = DataLoader.stream(filePath, labelIndex,
+                                                                   contentIndex)) {
+                rows.forEach(row -> {
+                    this.data.add(row.getBlock());
+                    this.labels.add(row.getLabel());
+                });
+            }
+        }
+        if (config.isShuffled()) {
+            DataLoader.shuffle(this.data, this.labels, config.seedFor(TrainingConfig.SHUFFLE));
+        }
+    }
+
+    // Constructs a DataLoader holding already loaded data and labels
+    private DataLoader(List<TextBlock> data, List<String> labels) {
+        this.data = data;
+        this.labels = labels;
+    }
+
+    // Returns a DataLoader holding every data point in the given CSV file, in file order, as
+    //      the constructor would without shuffling, but loaded on every core. The file is
+    //      split into byte ranges on record boundaries (see CsvRecordReader.split), and each
+    //      range is parsed and turned into TextBlocks on the common ForkJoinPool. The first
+    //      row of the file is a header and is skipped.
+    // 'filePath' should be non-null.
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist
+    public static DataLoader loadParallel(String filePath, int labelIndex, int contentIndex)
+                                          throws FileNotFoundException {
+        List<List<LabeledTextBlock>> chunks;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath),
+                                                    StandardOpenOption.READ)) {
+            long size = channel.size();
+            int parts = (int) Math.max((size + CHUNK_BYTES - 1) / CHUNK_BYTES,
+                    Math.min(size / MIN_CHUNK_BYTES,
+                             Runtime.getRuntime().availableProcessors() * 4));
+            long[] offsets = CsvRecordReader.split(channel, Math.max(1, parts));
+            chunks = IntStream.range(0, offsets.length - 1).parallel()
+                    .mapToObj(i -> parseRange(channel, offsets[i], offsets[i + 1], i == 0,
+                                              labelIndex, contentIndex))
+                    .collect(Collectors.toList());
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(filePath);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<TextBlock> data = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        for (List<LabeledTextBlock> chunk : chunks) {
+            for (LabeledTextBlock row : chunk) {
+                data.add(row.getBlock());
+                labels.add(row.getLabel());
+            }
+        }
+        return new DataLoader(data, labels);
+    }
+
+    // Same as loadParallel(filePath, labelIndex, contentIndex), but the data points are then
+    //      shuffled with shuffle(data, labels, seed), so the same seed always produces the
+    //      same order
+    // 'filePath' should be non-null.
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist
+    public static DataLoader loadParallel(String filePath, int labelIndex, int contentIndex,
+                                          long seed) throws FileNotFoundException {
+        DataLoader loader = loadParallel(filePath, labelIndex, contentIndex);
+        DataLoader.shuffle(loader.data, loader.labels, seed);
+        return loader;
+    }
+
+    // Helper method - parses the records in bytes [start, end) of the given file into labeled
+    //      data points, skipping the first record if it is the file's header
+    private static List<LabeledTextBlock> parseRange(FileChannel channel, long start, long end,
+                                                     boolean header, int labelIndex,
+                                                     int contentIndex) {
+        CsvRecordReader reader = CsvRecordReader.open(channel, start, end);
+        if (header && reader.hasNext()) {
+            reader.next();
+        }
+        List<LabeledTextBlock> rows = new ArrayList<>();
+        while (reader.hasNext()) {
+            List<String> row = reader.next();
+            rows.add(new LabeledTextBlock(new TextBlock(row.get(contentIndex)),
+                                          row.get(labelIndex)));
+        }
+        return rows;
+    }
+
+    // Returns a Stream of the labeled data points in the given CSV file, in file order, where
+    //      labels are taken from the given index and TextBlocks are built from the column at
+    //      'contentIndex'. Rows are parsed lazily as the Stream is consumed, so the raw file
+    //      contents are never held in memory. The first row of the file is a header and is
+    //      skipped. The Stream should be closed once consumed to release the file.
+    // 'filePath' should be non-null.
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist
+    public static Stream<LabeledTextBlock> stream(String filePath, int labelIndex,
+                                                  int contentIndex) throws FileNotFoundException {
+        return stream(filePath, labelIndex, contentIndex, TextBlock::new);
+    }
+
+    // Same as stream(filePath, labelIndex, contentIndex), but builds the TextBlocks with
+    //      TextBlock.forClassification, so testing a model on the file never adds words to
+    //      its dictionary
+    // 'filePath' and 'dictionary' should be non-null.
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist
+    public static Stream<LabeledTextBlock> streamForClassification(String filePath,
+            int labelIndex, int contentIndex, FeatureDictionary dictionary)
+            throws FileNotFoundException {
+        return stream(filePath, labelIndex, contentIndex,
+                      content -> TextBlock.forClassification(content, dictionary));
+    }
+
+    // Helper method - returns a Stream of the labeled data points in the given CSV file,
+    //      building each TextBlock from its content with 'toBlock'
+    private static Stream<LabeledTextBlock> stream(String filePath, int labelIndex,
+            int contentIndex, Function<String, TextBlock> toBlock) throws FileNotFoundException {
+        CsvRecordReader reader = CsvRecordReader.open(filePath);
+        if (reader.hasNext()) {
+            reader.next();
+        }
+        Spliterator<List<String>> rows = Spliterators.spliteratorUnknownSize(reader,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(rows, false)
+                .map(row -> new LabeledTextBlock(toBlock.apply(row.get(contentIndex)),
+                                                 row.get(labelIndex)))
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
     // Returns the List of TextBlock data points currently stored by this DataLoader
     public List<TextBlock> getData() {
         return this.data;
@@ -43,18 +206,32 @@ public class DataLoader {
     public static final Random RAND = new Random();
 
     // Shuffles the data and labels stored by the provided DataLoader equally so each label
-    //      still corresponds to the original datapoint at the same index
+    //      still corresponds to the original datapoint at the same index. Draws a new seed
+    //      from RAND every time; use shuffle(data, labels, seed) for a reproducible order.
     // 'loader' should be non-null.
     public static void shuffle(DataLoader loader) {
         DataLoader.shuffle(loader.data, loader.labels);
     }
 
     // Shuffles the provided data and label lists equally so each label still corresponds
-    //      to the original datapoint at the same index
+    //      to the original datapoint at the same index. Draws a new seed from RAND every
+    //      time; use shuffle(data, labels, seed) for a reproducible order.
     // 'data' and 'labels' should be non-null.
     public static void shuffle(List<TextBlock> data, List<String> labels) {
-        int seed = RAND.nextInt(Integer.MAX_VALUE);
-        Collections.shuffle(data, new Random(seed));
-        Collections.shuffle(labels, new Random(seed));
+        DataLoader.shuffle(data, labels, RAND.nextInt(Integer.MAX_VALUE));
+    }
+
+    // Shuffles the provided data and label lists equally so each label still corresponds
+    //      to the original datapoint at the same index. The same seed always produces the
+    //      same order. Both lists are permuted together in a single Fisher-Yates pass, which
+    //      gives the same order Collections.shuffle would with a Random of the same seed.
+    // 'data' and 'labels' should be non-null, random access and the same size.
+    public static void shuffle(List<TextBlock> data, List<String> labels, long seed) {
+        Random rand = new Random(seed);
+        for (int i = data.size(); i > 1; i--) {
+            int j = rand.nextInt(i);
+            Collections.swap(data, i - 1, j);
+            Collections.swap(labels, i - 1, j);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,320 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+// This class represents the results of testing a Classifier on labeled data: a confusion
+//      matrix, per-label precision, recall and F1, and the latency of every classify call,
+//      overall and for each expected label.
+// Evaluations are built with Evaluation.evaluate, which reads the data on the calling thread
+//      and hands it in fixed-size chunks through a bounded queue to worker threads, each with
+//      its own set of primitive counters, merged at the end. Memory use depends only on the
+//      number of workers and distinct labels, not on how much data is tested.
+public class Evaluation {
+    // data points per chunk handed to a worker, and chunks queued per worker
+    private static final int CHUNK_ROWS = 256;
+    private static final int QUEUED_CHUNKS = 2;
+    // queued once per worker after the last chunk
+    private static final List<LabeledTextBlock> END = new ArrayList<>();
+
+    private final List<String> labels;
+    private final long[][] confusion;
+    private final LatencyHistogram latencies;
+    private final List<LatencyHistogram> labelLatencies;
+
+    // Constructs an Evaluation from finished counters
+    private Evaluation(List<String> labels, long[][] confusion, LatencyHistogram latencies,
+                       List<LatencyHistogram> labelLatencies) {
+        this.labels = labels;
+        this.confusion = confusion;
+        this.latencies = latencies;
+        this.labelLatencies = labelLatencies;
+    }
+
+    // Returns an Evaluation of the given classifier on every labeled data point in the stream,
+    //      classified on one worker thread per core. Each data point is read exactly once and
+    //      never retained.
+    // Throws an IllegalArgumentException
+    //      If classifier or data is null
+    public static Evaluation evaluate(Classifier classifier, Stream<LabeledTextBlock> data) {
+        return evaluate(classifier, data, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Returns an Evaluation of the given classifier on every labeled data point in the stream,
+    //      classified on 'workers' threads. The stream is read in order on the calling thread,
+    //      which waits whenever the workers are QUEUED_CHUNKS chunks behind, so at most about
+    //      (QUEUED_CHUNKS + 1) * CHUNK_ROWS data points per worker are held at once.
+    // Throws an IllegalArgumentException
+    //      If classifier or data is null, or workers is less than 1
+    // Throws an IllegalStateException
+    //      If the calling thread is interrupted while waiting for the workers
+    public static Evaluation evaluate(Classifier classifier, Stream<LabeledTextBlock> data,
+                                      int workers) {
+        if (classifier == null || data == null || workers < 1) {
+            throw new IllegalArgumentException();
+        }
+        BlockingQueue<List<LabeledTextBlock>> queue =
+                new ArrayBlockingQueue<>(workers * QUEUED_CHUNKS);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<Counters> counters = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            Counters workerCounters = new Counters();
+            Thread thread = new Thread(() -> score(classifier, queue, workerCounters, failure),
+                                       "evaluation-worker");
+            thread.setDaemon(true);
+            counters.add(workerCounters);
+            threads.add(thread);
+            thread.start();
+        }
+
+        try {
+            Iterator<LabeledTextBlock> rows = data.sequential().iterator();
+            List<LabeledTextBlock> chunk = new ArrayList<>(CHUNK_ROWS);
+            while (rows.hasNext() && failure.get() == null) {
+                chunk.add(rows.next());
+                if (chunk.size() == CHUNK_ROWS) {
+                    queue.put(chunk);
+                    chunk = new ArrayList<>(CHUNK_ROWS);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                queue.put(chunk);
+            }
+            for (int i = 0; i < workers; i++) {
+                queue.put(END);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            threads.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evaluating", e);
+        } catch (RuntimeException e) {
+            // reading the data failed; the workers may be waiting for chunks that won't come
+            threads.forEach(Thread::interrupt);
+            throw e;
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        Counters total = counters.get(0);
+        for (int i = 1; i < workers; i++) {
+            total.merge(counters.get(i));
+        }
+        return total.finish();
+    }
+
+    // Helper method - runs on a worker thread: adds every chunk taken from 'queue' to
+    //      'counters' until it takes END. After a classify call fails, only drains the queue
+    //      so the reading thread is never left waiting.
+    private static void score(Classifier classifier, BlockingQueue<List<LabeledTextBlock>> queue,
+                              Counters counters, AtomicReference<RuntimeException> failure) {
+        try {
+            List<LabeledTextBlock> chunk;
+            while ((chunk = queue.take()) != END) {
+                if (failure.get() == null) {
+                    try {
+                        for (LabeledTextBlock row : chunk) {
+                            counters.add(classifier, row);
+                        }
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // evaluate gave up; nothing is waiting for these counters
+        }
+    }
+
+    // Returns every label seen as either an expected or a predicted label, sorted
+    public List<String> getLabels() {
+        return Collections.unmodifiableList(labels);
+    }
+
+    // Returns how many data points with label 'expected' were classified as 'predicted'
+    public long getCount(String expected, String predicted) {
+        int row = labels.indexOf(expected);
+        int column = labels.indexOf(predicted);
+        return row < 0 || column < 0 ? 0 : confusion[row][column];
+    }
+
+    // Returns the total number of data points evaluated
+    public long getTotal() {
+        return latencies.getCount();
+    }
+
+    // Returns the fraction of all data points that were classified correctly, or 0 if there
+    //      were none
+    public double getAccuracy() {
+        long correct = 0;
+        for (int i = 0; i < labels.size(); i++) {
+            correct += confusion[i][i];
+        }
+        return ratio(correct, getTotal());
+    }
+
+    // Returns the fraction of data points classified as 'label' that really had that label,
+    //      or 0 if nothing was classified as 'label'
+    public double getPrecision(String label) {
+        int i = labels.indexOf(label);
+        if (i < 0) {
+            return 0;
+        }
+        long predicted = 0;
+        for (long[] row : confusion) {
+            predicted += row[i];
+        }
+        return ratio(confusion[i][i], predicted);
+    }
+
+    // Returns the fraction of data points with 'label' that were classified as 'label', or 0
+    //      if no data point had that label
+    public double getRecall(String label) {
+        int i = labels.indexOf(label);
+        if (i < 0) {
+            return 0;
+        }
+        long expected = 0;
+        for (long count : confusion[i]) {
+            expected += count;
+        }
+        return ratio(confusion[i][i], expected);
+    }
+
+    // Returns the harmonic mean of the precision and recall of 'label', or 0 if both are 0
+    public double getF1(String label) {
+        double precision = getPrecision(label);
+        double recall = getRecall(label);
+        return precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+    }
+
+    // Returns the classify latency in nanoseconds at the given percentile (0 to 100)
+    public long getLatencyPercentile(double percentile) {
+        return latencies.getPercentile(percentile);
+    }
+
+    // Returns the classify latency in nanoseconds at the given percentile (0 to 100) of the
+    //      data points whose expected label is 'label', or 0 if there were none
+    public long getLatencyPercentile(String label, double percentile) {
+        int i = labels.indexOf(label);
+        return i < 0 ? 0 : labelLatencies.get(i).getPercentile(percentile);
+    }
+
+    // Returns a multi-line, human readable report of this Evaluation
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Overall accuracy: %.4f (%d data points)%n", getAccuracy(),
+                                getTotal()));
+        sb.append(String.format("%-16s %10s %10s %10s%n", "Label", "Precision", "Recall", "F1"));
+        for (String label : labels) {
+            sb.append(String.format("%-16s %10.4f %10.4f %10.4f%n", label, getPrecision(label),
+                                    getRecall(label), getF1(label)));
+        }
+        sb.append("Confusion matrix (rows: expected, columns: predicted)").append(
+                System.lineSeparator());
+        sb.append(String.format("%-16s", ""));
+        for (String label : labels) {
+            sb.append(String.format(" %10s", label));
+        }
+        sb.append(System.lineSeparator());
+        for (int i = 0; i < labels.size(); i++) {
+            sb.append(String.format("%-16s", labels.get(i)));
+            for (int j = 0; j < labels.size(); j++) {
+                sb.append(String.format(" %10d", confusion[i][j]));
+            }
+            sb.append(System.lineSeparator());
+        }
+        sb.append(String.format("Classify latency: p50 %d ns, p90 %d ns, p99 %d ns, max %d ns%n",
+                                getLatencyPercentile(50), getLatencyPercentile(90),
+                                getLatencyPercentile(99), latencies.getMax()));
+        sb.append(String.format("%-16s %10s %10s %10s %10s%n", "Expected label", "Count",
+                                "p50 ns", "p90 ns", "p99 ns"));
+        for (int i = 0; i < labels.size(); i++) {
+            LatencyHistogram histogram = labelLatencies.get(i);
+            if (histogram.getCount() > 0) {
+                sb.append(String.format("%-16s %10d %10d %10d %10d%n", labels.get(i),
+                                        histogram.getCount(), histogram.getPercentile(50),
+                                        histogram.getPercentile(90),
+                                        histogram.getPercentile(99)));
+            }
+        }
+        return sb.toString();
+    }
+
+    // Helper method - returns part / whole, or 0 if whole is 0
+    private static double ratio(long part, long whole) {
+        return whole == 0 ? 0 : (double) part / whole;
+    }
+
+    // This class holds one worker's running counts. Labels get indexes in the order this
+    //      worker first sees them; merging matches them up by name. Latencies are kept per
+    //      expected label.
+    private static class Counters {
+        private final Map<String, Integer> labelToIndex = new HashMap<>();
+        private final List<String> labels = new ArrayList<>();
+        private final List<LatencyHistogram> latencies = new ArrayList<>();
+        private long[][] confusion = new long[2][2];
+
+        // Classifies one data point, counting the result and how long it took
+        private void add(Classifier classifier, LabeledTextBlock row) {
+            long start = System.nanoTime();
+            String predicted = classifier.classify(row.getBlock());
+            long nanos = System.nanoTime() - start;
+            int expected = indexOf(row.getLabel());
+            latencies.get(expected).record(nanos);
+            confusion[expected][indexOf(predicted)]++;
+        }
+
+        // Adds every count in 'other' to these counters
+        private void merge(Counters other) {
+            for (int i = 0; i < other.labels.size(); i++) {
+                int row = indexOf(other.labels.get(i));
+                for (int j = 0; j < other.labels.size(); j++) {
+                    confusion[row][indexOf(other.labels.get(j))] += other.confusion[i][j];
+                }
+                latencies.get(row).merge(other.latencies.get(i));
+            }
+        }
+
+        // Returns an Evaluation of these counters with labels in sorted order
+        private Evaluation finish() {
+            List<String> sorted = new ArrayList<>(labels);
+            Collections.sort(sorted);
+            long[][] matrix = new long[sorted.size()][sorted.size()];
+            LatencyHistogram overall = new LatencyHistogram();
+            List<LatencyHistogram> byLabel = new ArrayList<>();
+            for (int i = 0; i < sorted.size(); i++) {
+                int row = labelToIndex.get(sorted.get(i));
+                for (int j = 0; j < sorted.size(); j++) {
+                    matrix[i][j] = confusion[row][labelToIndex.get(sorted.get(j))];
+                }
+                overall.merge(latencies.get(row));
+                byLabel.add(latencies.get(row));
+            }
+            return new Evaluation(sorted, matrix, overall, byLabel);
+        }
+
+        // Returns the index of 'label', growing the confusion matrix if it is new
+        private int indexOf(String label) {
+            Integer index = labelToIndex.get(label);
+            if (index == null) {
+                index = labels.size();
+                labels.add(label);
+                labelToIndex.put(label, index);
+                latencies.add(new LatencyHistogram());
+                if (index == confusion.length) {
+                    long[][] grown = new long[index * 2][index * 2];
+                    for (int i = 0; i < index; i++) {
+                        System.arraycopy(confusion[i], 0, grown[i], 0, index);
+                    }
+                    confusion = grown;
+                }
+            }
+            return index;
+        }
+    }
+}
\ No newline at end of file
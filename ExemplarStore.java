@@ -0,0 +1,99 @@
+import java.nio.*;
+import java.util.*;
+
+// This class represents an append-only, off-heap store of TextBlock word counts. Classifier
+//      leaves keep the example they were created from here (as a long handle) instead of
+//      holding on to the whole TextBlock, so a trained model's heap usage doesn't grow with
+//      the training set.
+// Each exemplar is packed into a direct ByteBuffer as: int distinct word count, int total word
+//      count, then the sorted feature ids and their counts. Exemplars go into segments of up
+//      to 64 MB (or one segment of its own, for an exemplar bigger than that), so the store
+//      isn't limited by the 2 GB a single ByteBuffer can address. A handle is the segment
+//      index in its upper 32 bits and the byte offset within that segment in its lower 32.
+// Safe for use by multiple threads at once.
+public class ExemplarStore {
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final int SEGMENT_CAPACITY = 1 << 26;
+
+    // every segment but the last is full; only the last one is written to or regrown
+    private final List<ByteBuffer> segments;
+    private long size;
+
+    // Constructs a new, empty ExemplarStore. No memory is reserved until the first add.
+    public ExemplarStore() {
+        this.segments = new ArrayList<>();
+    }
+
+    // Packs the word counts of the given TextBlock into this store and returns the handle to
+    //      read them back with
+    // 'block' should be non-null.
+    public synchronized long add(TextBlock block) {
+        int[] ids = block.getFeatureIds();
+        int[] counts = block.getCounts();
+        int bytes = (2 + ids.length * 2) * Integer.BYTES;
+        ByteBuffer buffer = segmentFor(bytes);
+        long handle = (long) (segments.size() - 1) << 32 | buffer.position();
+        buffer.putInt(ids.length);
+        buffer.putInt(block.getTotalWords());
+        for (int id : ids) {
+            buffer.putInt(id);
+        }
+        for (int count : counts) {
+            buffer.putInt(count);
+        }
+        size += bytes;
+        return handle;
+    }
+
+    // Returns a TextBlock with the word counts stored under the given handle, using the given
+    //      dictionary
+    // 'handle' should have been returned by add on this store.
+    public synchronized TextBlock get(long handle, FeatureDictionary dictionary) {
+        ByteBuffer buffer = segments.get((int) (handle >>> 32));
+        int position = (int) handle;
+        int distinct = buffer.getInt(position);
+        int total = buffer.getInt(position + Integer.BYTES);
+        int[] ids = new int[distinct];
+        int[] counts = new int[distinct];
+        position += 2 * Integer.BYTES;
+        for (int i = 0; i < distinct; i++) {
+            ids[i] = buffer.getInt(position);
+            position += Integer.BYTES;
+        }
+        for (int i = 0; i < distinct; i++) {
+            counts[i] = buffer.getInt(position);
+            position += Integer.BYTES;
+        }
+        return new TextBlock(dictionary, ids, counts, total);
+    }
+
+    // Returns the number of off-heap bytes holding exemplars
+    public synchronized long size() {
+        return size;
+    }
+
+    // Helper method - returns the segment the next 'bytes' bytes should be written to: the
+    //      last one, grown by doubling while it is under the segment capacity, or else a new
+    //      one. Growing copies the segment, so offsets into it stay valid.
+    private ByteBuffer segmentFor(int bytes) {
+        int last = segments.size() - 1;
+        ByteBuffer buffer = last < 0 ? null : segments.get(last);
+        if (buffer != null && buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        if (buffer == null || (long) buffer.position() + bytes > SEGMENT_CAPACITY) {
+            buffer = ByteBuffer.allocateDirect(Math.max(INITIAL_CAPACITY, bytes));
+            segments.add(buffer);
+            return buffer;
+        }
+        int capacity = buffer.capacity();
+        while (capacity - buffer.position() < bytes) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.min(capacity, SEGMENT_CAPACITY));
+        buffer.flip();
+        grown.put(buffer);
+        segments.set(last, grown);
+        return grown;
+    }
+}
@@ -0,0 +1,264 @@
+import java.util.*;
+
+// This class represents a shared vocabulary that maps every word (feature) to a small
+//      int id exactly once, so TextBlocks and Classifiers can work with primitive ids
+//      instead of hashing Strings on every lookup.
+// Ids are handed out in first-seen order starting at 0 and never change once assigned.
+// Words can be looked up straight from a range of any CharSequence, so callers that are
+//      tokenizing text only create a String the first time a word is seen.
+// A dictionary can instead be created in hashed mode (see hashed), where every word maps to
+//      one of a fixed number of hash buckets and the bucket index is its id. Different words
+//      can then share an id, but memory stays bounded no matter how many distinct words
+//      (random tokens, URLs, obfuscated spellings) the data contains. Each bucket remembers
+//      the first word seen in it as its name, so saved trees name their features with a word
+//      that hashes back to the same bucket when loaded into a hashed dictionary of the same
+//      size.
+// Safe for use by multiple threads at once. Lookups of known words don't lock.
+public class FeatureDictionary {
+    private static final FeatureDictionary DEFAULT = new FeatureDictionary();
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_HASH_BITS = 30;
+
+    // log2 of the number of buckets in hashed mode, or 0 for an exact dictionary
+    private final int hashBits;
+    // open addressing hash table, kept at most half full; null in hashed mode
+    private volatile Entry[] table;
+    // id -> word; in hashed mode, bucket -> first word seen in it
+    private volatile String[] names;
+    // number of words, or of buckets used in hashed mode; only written under this lock, but
+    //      volatile so size() doesn't need it
+    private volatile int size;
+
+    // Constructs a new, empty FeatureDictionary
+    public FeatureDictionary() {
+        this.hashBits = 0;
+        this.table = new Entry[INITIAL_CAPACITY];
+        this.names = new String[INITIAL_CAPACITY];
+    }
+
+    // Constructs a new, empty FeatureDictionary in hashed mode with 2^hashBits buckets
+    private FeatureDictionary(int hashBits) {
+        this.hashBits = hashBits;
+        this.names = new String[1 << hashBits];
+    }
+
+    // Returns a new, empty FeatureDictionary in hashed mode, which maps every word to one of
+    //      2^bits buckets and never holds more than 2^bits names
+    // Throws an IllegalArgumentException
+    //      If bits is less than 1 or more than 30
+    public static FeatureDictionary hashed(int bits) {
+        if (bits < 1 || bits > MAX_HASH_BITS) {
+            throw new IllegalArgumentException();
+        }
+        return new FeatureDictionary(bits);
+    }
+
+    // Returns the dictionary shared by every TextBlock and Classifier that isn't
+    //      given one explicitly
+    public static FeatureDictionary getDefault() {
+        return DEFAULT;
+    }
+
+    // Returns the id of the given word, assigning it the next free id if this
+    //      dictionary hasn't seen it before.
+    // 'word' should be non-null.
+    public int intern(String word) {
+        return intern(word, 0, word.length());
+    }
+
+    // Returns the id of the word text[start, end), assigning it the next free id if this
+    //      dictionary hasn't seen it before. Only creates a String for new words.
+    // 'text' should be non-null and 0 <= start <= end <= text.length().
+    public int intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        if (hashBits > 0) {
+            return internBucket(text, start, end, hash);
+        }
+        int id = find(table, text, start, end, hash);
+        if (id >= 0) {
+            return id;
+        }
+        synchronized (this) {
+            id = find(table, text, start, end, hash);
+            if (id < 0) {
+                id = add(text.subSequence(start, end).toString(), hash);
+            }
+            return id;
+        }
+    }
+
+    // Returns the id of the given word, or -1 if this dictionary hasn't seen it.
+    //      Never assigns a new id. In hashed mode, returns the word's bucket if any word
+    //      has been interned into it.
+    public int lookup(String word) {
+        return lookup(word, 0, word.length());
+    }
+
+    // Returns the id of the word text[start, end), or -1 if this dictionary hasn't seen it.
+    //      Never assigns a new id.
+    public int lookup(CharSequence text, int start, int end) {
+        if (hashBits > 0) {
+            int bucket = bucketOf(hash(text, start, end));
+            return names[bucket] != null ? bucket : -1;
+        }
+        return find(table, text, start, end, hash(text, start, end));
+    }
+
+    // Returns the word that was assigned the given id, or in hashed mode the first word
+    //      interned into the given bucket
+    // Throws an IllegalArgumentException
+    //      If no word has been assigned 'id'
+    public String nameOf(int id) {
+        String[] current = names;
+        if (id >= 0 && id < current.length && current[id] != null) {
+            return current[id];
+        }
+        synchronized (this) {
+            if (id < 0 || id >= names.length || names[id] == null) {
+                throw new IllegalArgumentException("Unknown feature id: " + id);
+            }
+            return names[id];
+        }
+    }
+
+    // Returns a negative number, zero, or a positive number as the word with id 'a' sorts
+    //      before, the same as, or after the word with id 'b'. Unlike the ids themselves, this
+    //      order doesn't depend on which words happened to be interned first. In hashed
+    //      mode bucket indexes are already independent of that, so they are compared directly.
+    public int compare(int a, int b) {
+        if (hashBits > 0) {
+            return Integer.compare(a, b);
+        }
+        return a == b ? 0 : nameOf(a).compareTo(nameOf(b));
+    }
+
+    // Returns the number of distinct words in this dictionary, or in hashed mode the number
+    //      of buckets that have had a word interned into them. Doesn't lock.
+    public int size() {
+        return size;
+    }
+
+    // Returns log2 of the number of buckets if this dictionary is in hashed mode, or 0 if it
+    //      maps every distinct word to its own id
+    public int getHashBits() {
+        return hashBits;
+    }
+
+    // Helper method - returns the bucket of the word text[start, end) with the given hash,
+    //      naming the bucket after the word if it is the first one to land there
+    private int internBucket(CharSequence text, int start, int end, int hash) {
+        int bucket = bucketOf(hash);
+        if (names[bucket] == null) {
+            synchronized (this) {
+                if (names[bucket] == null) {
+                    names[bucket] = text.subSequence(start, end).toString();
+                    size++;
+                }
+            }
+        }
+        return bucket;
+    }
+
+    // Helper method - returns the hashed mode bucket of a word with the given hash. The
+    //      polynomial String hash is run through the MurmurHash3 finalizer first so similar
+    //      words spread over all buckets.
+    private int bucketOf(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash & ((1 << hashBits) - 1);
+    }
+
+    // Helper method - stores a word that isn't in the table yet under the next free id,
+    //      growing the table and name array as needed. Callers must hold this lock.
+    private int add(String word, int hash) {
+        int id = size;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+        }
+        names[id] = word;
+        size++;
+
+        Entry[] current = table;
+        if (size * 2 > current.length) {
+            Entry[] grown = new Entry[current.length * 2];
+            for (Entry entry : current) {
+                if (entry != null) {
+                    insert(grown, entry);
+                }
+            }
+            insert(grown, new Entry(word, hash, id));
+            table = grown;
+        } else {
+            insert(current, new Entry(word, hash, id));
+        }
+        return id;
+    }
+
+    // Helper method - places an entry in the first free slot of its probe sequence
+    private static void insert(Entry[] table, Entry entry) {
+        int mask = table.length - 1;
+        int slot = spread(entry.hash) & mask;
+        while (table[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+    }
+
+    // Helper method - returns the id stored for text[start, end) in the given table, or -1
+    private static int find(Entry[] table, CharSequence text, int start, int end, int hash) {
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        Entry entry;
+        while ((entry = table[slot]) != null) {
+            if (entry.hash == hash && matches(entry.word, text, start, end)) {
+                return entry.id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Helper method - returns true if word has exactly the chars of text[start, end)
+    private static boolean matches(String word, CharSequence text, int start, int end) {
+        if (word.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (word.charAt(i - start) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Helper method - returns the same hash String.hashCode would for text[start, end)
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    // Helper method - mixes high hash bits into the low bits used to pick a slot
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // This class represents one word -> id mapping. All fields are final so entries can be
+    //      read from the table without locking.
+    private static class Entry {
+        private final String word;
+        private final int hash;
+        private final int id;
+
+        private Entry(String word, int hash, int id) {
+            this.word = word;
+            this.hash = hash;
+            this.id = id;
+        }
+    }
+}
\ No newline at end of file
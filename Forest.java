@@ -0,0 +1,173 @@
+import java.io.*;
+import java.util.*;
+import java.util.stream.*;
+
+// This class represents an ensemble of Classifier trees that predicts by majority vote.
+// Because a single tree depends heavily on the order it sees its training data in, each tree
+//      is trained on its own seeded shuffle (or bootstrap sample) of the data. Trees are
+//      trained in parallel across cores.
+// Saved forests are a "Trees: N" line followed by each tree in the Classifier.save format.
+public class Forest {
+    private final List<Classifier> trees;
+    private final CompiledClassifier[] compiled;
+    private final List<String> labels;
+    // compiledLabels[t][i] is the index in 'labels' of label i of compiled tree t
+    private final int[][] compiledLabels;
+
+    // Constructs a new Forest of 'size' trees trained in parallel on the given data. Tree i is
+    //      trained on a copy of the data shuffled with DataLoader.shuffle using a seed derived
+    //      from 'seed', so the same seed always produces the same forest. If 'bootstrap' is
+    //      true, each tree instead trains on data.size() points sampled with replacement.
+    // Throws an IllegalArgumentException
+    //      If data or labels is null, they aren't the same size, data is empty, or size < 1
+    public Forest(List<TextBlock> data, List<String> labels, int size, long seed,
+                  boolean bootstrap) {
+        if (data == null || labels == null || data.size() != labels.size() || data.isEmpty()
+                || size < 1) {
+            throw new IllegalArgumentException();
+        }
+        Random rand = new Random(seed);
+        long[] seeds = new long[size];
+        for (int i = 0; i < size; i++) {
+            seeds[i] = rand.nextLong();
+        }
+        this.trees = IntStream.range(0, size).parallel()
+                .mapToObj(i -> trainTree(data, labels, seeds[i], bootstrap))
+                .collect(Collectors.toList());
+        this.compiled = new CompiledClassifier[size];
+        this.labels = new ArrayList<>();
+        this.compiledLabels = new int[size][];
+        compileTrees();
+    }
+
+    // Constructs a new Forest of 'size' trees trained in parallel on the given data, as the
+    //      seeded constructor would with the FOREST seed of 'config'
+    // Throws an IllegalArgumentException
+    //      If data, labels or config is null, data and labels aren't the same size, data is
+    //      empty, or size < 1
+    public Forest(List<TextBlock> data, List<String> labels, int size, TrainingConfig config,
+                  boolean bootstrap) {
+        this(data, labels, size, forestSeed(config), bootstrap);
+    }
+
+    // Constructs a Forest from a saved forest: a "Trees: N" line followed by N trees in the
+    //      pre-order Classifier.save format
+    // Throws an IllegalArgumentException
+    //      If input is null
+    // Throws an IllegalStateException
+    //      If input doesn't start with a valid "Trees: " line or ends before the last tree
+    public Forest(Scanner input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        if (!input.hasNextLine()) {
+            throw new IllegalStateException("Missing \"Trees: \" line");
+        }
+        String line = input.nextLine();
+        if (!line.startsWith("Trees: ")) {
+            throw new IllegalStateException("Missing \"Trees: \" line");
+        }
+        int size = Integer.parseInt(line.substring("Trees: ".length()));
+        if (size < 1) {
+            throw new IllegalStateException("A forest needs at least one tree");
+        }
+        this.trees = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            trees.add(new Classifier(input));
+        }
+        this.compiled = new CompiledClassifier[size];
+        this.labels = new ArrayList<>();
+        this.compiledLabels = new int[size][];
+        compileTrees();
+    }
+
+    // Returns the label predicted by the most trees for the given input. Ties go to the tied
+    //      label the earliest tree voted for. All trees are evaluated in one pass over their
+    //      compiled forms.
+    // Throws an IllegalArgumentException
+    //      If input is null or doesn't use the trees' FeatureDictionary
+    public String classify(TextBlock input) {
+        int[] treeVotes = new int[compiled.length];
+        int[] votes = new int[labels.size()];
+        for (int t = 0; t < compiled.length; t++) {
+            treeVotes[t] = compiledLabels[t][compiled[t].classifyIndex(input)];
+            votes[treeVotes[t]]++;
+        }
+        // walking the votes in tree order and only switching on strictly more votes
+        // leaves 'best' on the most voted label that got its first vote earliest
+        int best = treeVotes[0];
+        for (int vote : treeVotes) {
+            if (votes[vote] > votes[best]) {
+                best = vote;
+            }
+        }
+        return labels.get(best);
+    }
+
+    // Saves this forest to the given output: a "Trees: N" line followed by every tree in the
+    //      Classifier.save format
+    // Throws an IllegalArgumentException
+    //      If output is null
+    public void save(PrintStream output) {
+        if (output == null) {
+            throw new IllegalArgumentException();
+        }
+        output.println("Trees: " + trees.size());
+        for (Classifier tree : trees) {
+            tree.save(output);
+        }
+    }
+
+    // Returns the trees in this forest. Trees that learn after the forest was built keep
+    //      voting with the tree they had then.
+    public List<Classifier> getTrees() {
+        return Collections.unmodifiableList(trees);
+    }
+
+    // Helper method - returns the FOREST seed of 'config'
+    private static long forestSeed(TrainingConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException();
+        }
+        return config.seedFor(TrainingConfig.FOREST);
+    }
+
+    // Helper method - trains one tree on a seeded shuffle or bootstrap sample of the data
+    private static Classifier trainTree(List<TextBlock> data, List<String> labels, long seed,
+                                        boolean bootstrap) {
+        List<TextBlock> treeData = new ArrayList<>();
+        List<String> treeLabels = new ArrayList<>();
+        if (bootstrap) {
+            Random rand = new Random(seed);
+            for (int i = 0; i < data.size(); i++) {
+                int pick = rand.nextInt(data.size());
+                treeData.add(data.get(pick));
+                treeLabels.add(labels.get(pick));
+            }
+        } else {
+            treeData.addAll(data);
+            treeLabels.addAll(labels);
+            DataLoader.shuffle(treeData, treeLabels, seed);
+        }
+        return new Classifier(treeData, treeLabels);
+    }
+
+    // Helper method - compiles every tree and maps each tree's label indexes to shared ones
+    private void compileTrees() {
+        Map<String, Integer> labelToIndex = new HashMap<>();
+        for (int t = 0; t < trees.size(); t++) {
+            compiled[t] = trees.get(t).compile();
+            String[] treeLabels = compiled[t].labels;
+            compiledLabels[t] = new int[treeLabels.length];
+            for (int i = 0; i < treeLabels.length; i++) {
+                Integer index = labelToIndex.get(treeLabels[i]);
+                if (index == null) {
+                    index = labels.size();
+                    labels.add(treeLabels[i]);
+                    labelToIndex.put(treeLabels[i], index);
+                }
+                compiledLabels[t][i] = index;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,431 @@
+import java.util.*;
+import java.util.stream.*;
+
+// This class represents a batch trainer that grows Classifier trees from impurity scores
+//      instead of from pairs of examples, which gives shallower trees that don't depend on
+//      the order of the training data.
+// Training first builds a columnar inverted index of the data: for every feature, a posting
+//      list of the data points that contain it and the feature's word probability in each,
+//      sorted by probability. The tree is then grown one level at a time. For every level,
+//      each feature's posting list is scanned once, in parallel across features, scoring
+//      every threshold between neighbouring probabilities for every node being split by the
+//      Gini impurity of the two sides. Each node takes the best split found for it by any
+//      feature, unless the node has reached maxDepth, either side would get fewer than
+//      minLeaf data points, or no split lowers the impurity.
+// Trees come out as ordinary Classifiers, so they classify, save and load like any other,
+//      and each leaf keeps one of its training examples so the Classifier can keep learning.
+public class IndexedTrainer {
+    // levels with fewer active data points than this are scored on a single thread
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    private final int maxDepth;
+    private final int minLeaf;
+
+    // Constructs a new IndexedTrainer that grows trees at most 'maxDepth' branches deep, with
+    //      at least 'minLeaf' training data points in every leaf
+    // Throws an IllegalArgumentException
+    //      If maxDepth is negative or minLeaf is less than 1
+    public IndexedTrainer(int maxDepth, int minLeaf) {
+        if (maxDepth < 0 || minLeaf < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.maxDepth = maxDepth;
+        this.minLeaf = minLeaf;
+    }
+
+    // Returns a Classifier trained on the given data and labels. Ties between equally good
+    //      splits go to the feature that sorts first in the data's FeatureDictionary (see
+    //      FeatureDictionary.compare), then to the lower threshold, so the same data always
+    //      gives the same tree whatever order it is in.
+    // Throws an IllegalArgumentException
+    //      If data or labels is null, they aren't the same size, data is empty, or the data
+    //      points don't all share one FeatureDictionary
+    public Classifier train(List<TextBlock> data, List<String> labels) {
+        if (data == null || labels == null || data.size() != labels.size() || data.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        FeatureDictionary dictionary = data.get(0).getDictionary();
+        for (TextBlock block : data) {
+            if (block.getDictionary() != dictionary) {
+                throw new IllegalArgumentException();
+            }
+        }
+        return new Growth(data, labels, dictionary).grow();
+    }
+
+    // This class holds the index and the partially grown tree of one train call
+    private class Growth {
+        private final List<TextBlock> data;
+        private final FeatureDictionary dictionary;
+        // label names, sorted, and the index into them of every data point's label
+        private final String[] classes;
+        private final int[] classOf;
+
+        // the inverted index: column c holds feature columnFeature[c], and its postings are
+        // postingDocs / postingValues [columnStart[c], columnStart[c + 1]), by value ascending
+        private final int[] columnFeature;
+        private final int[] columnStart;
+        private final int[] postingDocs;
+        private final double[] postingValues;
+
+        // the slot of the active node each data point is in at the current level, or -1
+        private final int[] slotOf;
+
+        // the tree, as growing lists of nodes; labelIds is -1 for branches
+        private final List<Integer> features = new ArrayList<>();
+        private final List<Double> thresholds = new ArrayList<>();
+        private final List<Integer> left = new ArrayList<>();
+        private final List<Integer> right = new ArrayList<>();
+        private final List<Integer> labelIds = new ArrayList<>();
+        private final List<TextBlock> exemplars = new ArrayList<>();
+
+        private Growth(List<TextBlock> data, List<String> labels, FeatureDictionary dictionary) {
+            this.data = data;
+            this.dictionary = dictionary;
+            this.classes = new TreeSet<>(labels).toArray(new String[0]);
+            this.classOf = new int[data.size()];
+            for (int i = 0; i < classOf.length; i++) {
+                classOf[i] = Arrays.binarySearch(classes, labels.get(i));
+            }
+            this.slotOf = new int[data.size()];
+
+            // count postings per feature, then lay the columns out back to back
+            Map<Integer, Integer> featureToColumn = new HashMap<>();
+            List<Integer> columnSizes = new ArrayList<>();
+            for (TextBlock block : data) {
+                for (int feature : block.getFeatureIds()) {
+                    Integer column = featureToColumn.get(feature);
+                    if (column == null) {
+                        featureToColumn.put(feature, columnSizes.size());
+                        columnSizes.add(1);
+                    } else {
+                        columnSizes.set(column, columnSizes.get(column) + 1);
+                    }
+                }
+            }
+            int columns = columnSizes.size();
+            this.columnFeature = new int[columns];
+            this.columnStart = new int[columns + 1];
+            for (Map.Entry<Integer, Integer> entry : featureToColumn.entrySet()) {
+                columnFeature[entry.getValue()] = entry.getKey();
+            }
+            for (int c = 0; c < columns; c++) {
+                columnStart[c + 1] = columnStart[c] + columnSizes.get(c);
+            }
+            this.postingDocs = new int[columnStart[columns]];
+            this.postingValues = new double[columnStart[columns]];
+            int[] filled = Arrays.copyOf(columnStart, columns);
+            for (int doc = 0; doc < data.size(); doc++) {
+                TextBlock block = data.get(doc);
+                int[] ids = block.getFeatureIds();
+                int[] counts = block.getCounts();
+                double total = block.getTotalWords();
+                for (int i = 0; i < ids.length; i++) {
+                    int at = filled[featureToColumn.get(ids[i])]++;
+                    postingDocs[at] = doc;
+                    // computed exactly as TextBlock.get computes it
+                    postingValues[at] = counts[i] / total;
+                }
+            }
+            IntStream.range(0, columns).parallel().forEach(c ->
+                    sortByValue(postingValues, postingDocs, columnStart[c], columnStart[c + 1]));
+        }
+
+        // Grows the whole tree level by level and returns it as a Classifier
+        private Classifier grow() {
+            // the tree node index of every active node at the current level, by slot
+            List<Integer> level = new ArrayList<>();
+            level.add(addNode());
+            Arrays.fill(slotOf, 0);
+            int depth = 0;
+            while (!level.isEmpty()) {
+                int slots = level.size();
+                int[][] classCounts = new int[slots][classes.length];
+                // the first data point of each label in each node, for leaf exemplars
+                int[][] firstDoc = new int[slots][classes.length];
+                for (int doc = slotOf.length - 1; doc >= 0; doc--) {
+                    if (slotOf[doc] >= 0) {
+                        classCounts[slotOf[doc]][classOf[doc]]++;
+                        firstDoc[slotOf[doc]][classOf[doc]] = doc;
+                    }
+                }
+                Splits best = depth < maxDepth ? findSplits(classCounts)
+                                               : new Splits(slots, classes.length, dictionary);
+
+                List<Integer> next = new ArrayList<>();
+                int[] leftSlot = new int[slots];
+                int[] rightSlot = new int[slots];
+                for (int slot = 0; slot < slots; slot++) {
+                    int node = level.get(slot);
+                    if (best.feature[slot] < 0) {
+                        leftSlot[slot] = -1;
+                        makeLeaf(node, classCounts[slot], firstDoc[slot]);
+                    } else {
+                        features.set(node, best.feature[slot]);
+                        thresholds.set(node, best.threshold[slot]);
+                        leftSlot[slot] = next.size();
+                        left.set(node, addNode());
+                        next.add(left.get(node));
+                        rightSlot[slot] = next.size();
+                        right.set(node, addNode());
+                        next.add(right.get(node));
+                    }
+                }
+                for (int doc = 0; doc < slotOf.length; doc++) {
+                    int slot = slotOf[doc];
+                    if (slot >= 0) {
+                        if (leftSlot[slot] < 0) {
+                            slotOf[doc] = -1;
+                        } else if (data.get(doc).get(best.feature[slot]) < best.threshold[slot]) {
+                            slotOf[doc] = leftSlot[slot];
+                        } else {
+                            slotOf[doc] = rightSlot[slot];
+                        }
+                    }
+                }
+                level = next;
+                depth++;
+            }
+            return toClassifier();
+        }
+
+        // Returns the best split of every active node over all features. Features are scored
+        //      in parallel, each worker keeping its own best splits, which are merged at the end.
+        private Splits findSplits(int[][] classCounts) {
+            int slots = classCounts.length;
+            int active = 0;
+            for (int[] counts : classCounts) {
+                for (int count : counts) {
+                    active += count;
+                }
+            }
+            IntStream columns = IntStream.range(0, columnFeature.length);
+            if (active >= PARALLEL_THRESHOLD) {
+                columns = columns.parallel();
+            }
+            return columns.collect(() -> new Splits(slots, classes.length, dictionary),
+                                   (splits, c) -> scoreColumn(c, classCounts, splits),
+                                   Splits::merge);
+        }
+
+        // Scores every threshold of column 'c' for every active node, keeping any that beat
+        //      the best splits found so far in 'splits'
+        private void scoreColumn(int c, int[][] classCounts, Splits splits) {
+            int start = columnStart[c];
+            int end = columnStart[c + 1];
+            int feature = columnFeature[c];
+            List<Integer> touched = new ArrayList<>();
+
+            // data points without the feature have probability 0 and always go left, so
+            // start every node's left side with its data points that aren't in this column
+            for (int i = start; i < end; i++) {
+                int slot = slotOf[postingDocs[i]];
+                if (slot >= 0) {
+                    if (splits.leftSize[slot] < 0) {
+                        splits.leftSize[slot] = 0;
+                        System.arraycopy(classCounts[slot], 0, splits.leftCounts[slot], 0,
+                                         classes.length);
+                        splits.lastValue[slot] = 0;
+                        touched.add(slot);
+                    }
+                    splits.leftCounts[slot][classOf[postingDocs[i]]]--;
+                }
+            }
+            for (int slot : touched) {
+                int size = 0;
+                for (int count : splits.leftCounts[slot]) {
+                    size += count;
+                }
+                splits.leftSize[slot] = size;
+            }
+
+            // walk the column in value order, scoring a threshold between each pair of
+            // distinct neighbouring values before moving the data point to the left side
+            for (int i = start; i < end; i++) {
+                int doc = postingDocs[i];
+                int slot = slotOf[doc];
+                if (slot < 0) {
+                    continue;
+                }
+                double value = postingValues[i];
+                if (value > splits.lastValue[slot]) {
+                    score(splits, slot, classCounts[slot], feature, splits.lastValue[slot],
+                          value);
+                    splits.lastValue[slot] = value;
+                }
+                splits.leftCounts[slot][classOf[doc]]++;
+                splits.leftSize[slot]++;
+            }
+            for (int slot : touched) {
+                splits.leftSize[slot] = -1;
+            }
+        }
+
+        // Scores splitting the node in 'slot' between the values 'below' and 'above' of the
+        //      given feature, given the class counts currently on its left side
+        private void score(Splits splits, int slot, int[] total, int feature, double below,
+                           double above) {
+            int leftSize = splits.leftSize[slot];
+            int size = 0;
+            for (int count : total) {
+                size += count;
+            }
+            int rightSize = size - leftSize;
+            if (leftSize < minLeaf || rightSize < minLeaf) {
+                return;
+            }
+            // maximizing the sum of count^2 / size over both sides minimizes Gini impurity
+            int[] leftCounts = splits.leftCounts[slot];
+            double leftSum = 0;
+            double rightSum = 0;
+            double parentSum = 0;
+            for (int k = 0; k < total.length; k++) {
+                leftSum += (double) leftCounts[k] * leftCounts[k];
+                int rightCount = total[k] - leftCounts[k];
+                rightSum += (double) rightCount * rightCount;
+                parentSum += (double) total[k] * total[k];
+            }
+            double score = leftSum / leftSize + rightSum / rightSize;
+            if (score <= parentSum / size * (1 + 1e-12)) {
+                return;
+            }
+            double threshold = below + (above - below) / 2.0;
+            if (threshold <= below) {
+                threshold = above; // below and above are neighbouring doubles
+            }
+            splits.offer(slot, score, feature, threshold);
+        }
+
+        // Turns the given node into a leaf predicting its most common label (ties go to the
+        //      label that sorts first), keeping its first training example with that label
+        private void makeLeaf(int node, int[] classCounts, int[] firstDoc) {
+            int best = 0;
+            for (int k = 1; k < classCounts.length; k++) {
+                if (classCounts[k] > classCounts[best]) {
+                    best = k;
+                }
+            }
+            labelIds.set(node, best);
+            exemplars.set(node, data.get(firstDoc[best]));
+        }
+
+        // Adds an undecided node to the tree and returns its index
+        private int addNode() {
+            features.add(-1);
+            thresholds.add(0.0);
+            left.add(-1);
+            right.add(-1);
+            labelIds.add(-1);
+            exemplars.add(null);
+            return features.size() - 1;
+        }
+
+        // Returns the grown tree as a Classifier
+        private Classifier toClassifier() {
+            int size = features.size();
+            int[] featureArray = new int[size];
+            double[] thresholdArray = new double[size];
+            int[] leftArray = new int[size];
+            int[] rightArray = new int[size];
+            int[] labelArray = new int[size];
+            for (int i = 0; i < size; i++) {
+                featureArray[i] = features.get(i);
+                thresholdArray[i] = thresholds.get(i);
+                leftArray[i] = left.get(i);
+                rightArray[i] = right.get(i);
+                labelArray[i] = labelIds.get(i);
+            }
+            CompiledClassifier compiled = new CompiledClassifier(dictionary, featureArray,
+                    thresholdArray, leftArray, rightArray, labelArray, classes);
+            return new Classifier(compiled, exemplars.toArray(new TextBlock[0]));
+        }
+    }
+
+    // This class holds the best split found so far for every active node, plus scratch space
+    //      for scanning one column at a time
+    private static class Splits {
+        private final FeatureDictionary dictionary;
+        private final double[] score;
+        private final int[] feature;
+        private final double[] threshold;
+        private final int[][] leftCounts;
+        private final int[] leftSize;
+        private final double[] lastValue;
+
+        private Splits(int slots, int classes, FeatureDictionary dictionary) {
+            this.dictionary = dictionary;
+            this.score = new double[slots];
+            this.feature = new int[slots];
+            this.threshold = new double[slots];
+            this.leftCounts = new int[slots][classes];
+            this.leftSize = new int[slots];
+            this.lastValue = new double[slots];
+            Arrays.fill(feature, -1);
+            Arrays.fill(leftSize, -1);
+        }
+
+        // Keeps the given split for 'slot' if it is better than the best one so far
+        private void offer(int slot, double score, int feature, double threshold) {
+            if (this.feature[slot] < 0 || score > this.score[slot]
+                    || (score == this.score[slot] && isPreferred(feature, threshold, slot))) {
+                this.score[slot] = score;
+                this.feature[slot] = feature;
+                this.threshold[slot] = threshold;
+            }
+        }
+
+        // Returns true if an equally scored split on 'feature' at 'threshold' should replace
+        //      the best split of 'slot'
+        private boolean isPreferred(int feature, double threshold, int slot) {
+            int order = dictionary.compare(feature, this.feature[slot]);
+            return order < 0 || (order == 0 && threshold < this.threshold[slot]);
+        }
+
+        // Keeps every split in 'other' that is better than the best one so far. Ties are
+        //      broken the same way as in offer, so the result doesn't depend on which worker
+        //      scored which feature.
+        private void merge(Splits other) {
+            for (int slot = 0; slot < score.length; slot++) {
+                if (other.feature[slot] >= 0) {
+                    offer(slot, other.score[slot], other.feature[slot], other.threshold[slot]);
+                }
+            }
+        }
+    }
+
+    // Helper method - sorts values[from, to) ascending, moving docs[from, to) along with them.
+    //      The sort is stable, so equal values keep their data points in index order.
+    private static void sortByValue(double[] values, int[] docs, int from, int to) {
+        int length = to - from;
+        double[] valueScratch = new double[length];
+        int[] docScratch = new int[length];
+        for (int width = 1; width < length; width *= 2) {
+            for (int low = from; low < to - width; low += 2 * width) {
+                int middle = low + width;
+                int high = Math.min(low + 2 * width, to);
+                int i = low;
+                int j = middle;
+                int k = 0;
+                while (i < middle && j < high) {
+                    if (values[j] < values[i]) {
+                        valueScratch[k] = values[j];
+                        docScratch[k++] = docs[j++];
+                    } else {
+                        valueScratch[k] = values[i];
+                        docScratch[k++] = docs[i++];
+                    }
+                }
+                while (i < middle) {
+                    valueScratch[k] = values[i];
+                    docScratch[k++] = docs[i++];
+                }
+                while (j < high) {
+                    valueScratch[k] = values[j];
+                    docScratch[k++] = docs[j++];
+                }
+                System.arraycopy(valueScratch, 0, values, low, k);
+                System.arraycopy(docScratch, 0, docs, low, k);
+            }
+        }
+    }
+}
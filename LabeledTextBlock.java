@@ -0,0 +1,22 @@
+// This class represents a single TextBlock data point together with its known label
+public class LabeledTextBlock {
+    private final TextBlock block;
+    private final String label;
+
+    // Constructs a new LabeledTextBlock pairing the given block with the given label
+    // 'block' and 'label' should be non-null.
+    public LabeledTextBlock(TextBlock block, String label) {
+        this.block = block;
+        this.label = label;
+    }
+
+    // Returns the TextBlock data point
+    public TextBlock getBlock() {
+        return block;
+    }
+
+    // Returns the label associated with the data point
+    public String getLabel() {
+        return label;
+    }
+}
\ No newline at end of file
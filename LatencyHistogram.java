@@ -0,0 +1,100 @@
+import java.util.*;
+
+// This class represents a fixed-size histogram of non-negative latencies in nanoseconds, in
+//      the style of HdrHistogram: values are bucketed by power of two, and each power of two
+//      is split into SUB_BUCKETS linear sub-buckets, so every recorded value is kept to
+//      within 1 / SUB_BUCKETS of its true value no matter how large it is.
+// Not safe for use by multiple threads at once; give each thread its own histogram and merge
+//      them when done.
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values below SUB_BUCKETS get exact buckets, then one row of SUB_BUCKETS per power of two
+    private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1);
+
+    private final long[] counts;
+    private long total;
+    private long max;
+
+    // Constructs a new, empty LatencyHistogram
+    public LatencyHistogram() {
+        this.counts = new long[BUCKETS];
+    }
+
+    // Records one latency of 'nanos' nanoseconds. Negative values are recorded as 0.
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts[bucketOf(nanos)]++;
+        total++;
+        max = Math.max(max, nanos);
+    }
+
+    // Adds every latency recorded by 'other' to this histogram
+    // 'other' should be non-null.
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    // Discards every latency recorded so far
+    public void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        max = 0;
+    }
+
+    // Returns the number of latencies recorded
+    public long getCount() {
+        return total;
+    }
+
+    // Returns the largest latency recorded, or 0 if none were
+    public long getMax() {
+        return max;
+    }
+
+    // Returns the latency at the given percentile (0 to 100) of everything recorded, as the
+    //      highest value of the bucket it falls in, or 0 if nothing was recorded
+    // Throws an IllegalArgumentException
+    //      If percentile is outside [0, 100]
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException();
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, highestValueOf(i));
+            }
+        }
+        return max;
+    }
+
+    // Helper method - returns the bucket 'value' is counted in
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> exponent) - SUB_BUCKETS;
+        return SUB_BUCKETS * (exponent + 1) + subBucket;
+    }
+
+    // Helper method - returns the largest value counted in the given bucket
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << exponent) - 1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,227 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+// This class reads and writes classifiers in a versioned binary model format that can be
+//      loaded by memory-mapping the file, as a faster alternative to the pre-order text
+//      format of Classifier.save / new Classifier(Scanner), which stays supported.
+// Layout (all numbers big-endian):
+//      int    magic ("SPMC")
+//      int    format version
+//      int    node count (n)
+//      int    string count (s)
+//      s x    string table entry: int byte length, UTF-8 bytes
+//      n x    int feature string index (-1 for leaves)
+//      n x    double threshold
+//      n x    int left child node index (-1 for leaves)
+//      n x    int right child node index (-1 for leaves)
+//      n x    int label string index (-1 for branches)
+//      int    CRC32 of every byte before it
+// Node 0 is the root. The string table holds feature names and labels in the order nodes
+//      first reference them, so the same tree always produces a byte-identical file.
+public class ModelFile {
+    public static final int MAGIC = 0x53504D43;
+    public static final int VERSION = 1;
+
+    // Writes the given classifier to the file at 'filePath' in the binary model format
+    // 'classifier' and 'filePath' should be non-null.
+    // Throws an IOException
+    //      If the file can't be written
+    public static void write(Classifier classifier, String filePath) throws IOException {
+        write(classifier.compile(), filePath);
+    }
+
+    // Writes the given compiled classifier to the file at 'filePath' in the binary model format
+    // 'compiled' and 'filePath' should be non-null.
+    // Throws an IOException
+    //      If the file can't be written
+    public static void write(CompiledClassifier compiled, String filePath) throws IOException {
+        int nodes = compiled.size();
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringToIndex = new HashMap<>();
+        int[] featureStrings = new int[nodes];
+        int[] labelStrings = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            featureStrings[i] = -1;
+            labelStrings[i] = -1;
+            if (compiled.labelIds[i] < 0) {
+                String name = compiled.getDictionary().nameOf(compiled.features[i]);
+                featureStrings[i] = indexOf(name, strings, stringToIndex);
+            } else {
+                labelStrings[i] = indexOf(compiled.labels[compiled.labelIds[i]], strings,
+                                          stringToIndex);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filePath)), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodes);
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            for (int i = 0; i < nodes; i++) {
+                out.writeInt(featureStrings[i]);
+            }
+            for (int i = 0; i < nodes; i++) {
+                out.writeDouble(compiled.thresholds[i]);
+            }
+            for (int i = 0; i < nodes; i++) {
+                out.writeInt(compiled.left[i]);
+            }
+            for (int i = 0; i < nodes; i++) {
+                out.writeInt(compiled.right[i]);
+            }
+            for (int i = 0; i < nodes; i++) {
+                out.writeInt(labelStrings[i]);
+            }
+            out.writeInt((int) crc.getValue());
+        }
+    }
+
+    // Returns a Classifier loaded from the binary model file at 'filePath', interning its
+    //      features into the default FeatureDictionary
+    // Throws an IOException
+    //      If the file can't be read, isn't a model file, or is corrupt
+    public static Classifier read(String filePath) throws IOException {
+        return new Classifier(readCompiled(filePath, FeatureDictionary.getDefault()));
+    }
+
+    // Returns a CompiledClassifier loaded from the binary model file at 'filePath', interning
+    //      its features into the given dictionary. The file is memory-mapped and its node
+    //      arrays are bulk-copied, so loading does no per-node parsing.
+    // Throws an IOException
+    //      If the file can't be read, isn't a model file, or is corrupt
+    public static CompiledClassifier readCompiled(String filePath, FeatureDictionary dictionary)
+                                                  throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath),
+                                                    StandardOpenOption.READ)) {
+            if (channel.size() < 5 * Integer.BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a model file: " + filePath);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readCompiled(buffer, dictionary, filePath);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException | IllegalArgumentException e) {
+            throw new IOException("Corrupt model file: " + filePath, e);
+        }
+    }
+
+    // Returns the CRC32 checksum stored at the end of the model file at 'filePath'. Equal
+    //      checksums mean equal trees, so this is a quick way to check that two training runs
+    //      produced the same model.
+    // Throws an IOException
+    //      If the file can't be read or isn't a model file
+    public static long checksum(String filePath) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+            if (file.length() < 2 * Integer.BYTES || file.readInt() != MAGIC) {
+                throw new IOException("Not a model file: " + filePath);
+            }
+            file.seek(file.length() - Integer.BYTES);
+            return file.readInt() & 0xFFFFFFFFL;
+        }
+    }
+
+    // Returns true if the file at 'filePath' starts with the binary model file magic number
+    // Throws an IOException
+    //      If the file can't be read
+    public static boolean isModelFile(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filePath))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // Helper method - decodes a whole model file held in 'buffer'
+    private static CompiledClassifier readCompiled(ByteBuffer buffer, FeatureDictionary dictionary,
+                                                   String filePath) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a model file: " + filePath);
+        }
+        int checksumAt = buffer.limit() - Integer.BYTES;
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(0).limit(checksumAt);
+        crc.update(body);
+        if (buffer.getInt(checksumAt) != (int) crc.getValue()) {
+            throw new IOException("Checksum mismatch in model file: " + filePath);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model file version " + version + ": " + filePath);
+        }
+        int nodes = buffer.getInt();
+        int stringCount = buffer.getInt();
+        if (nodes <= 0 || stringCount < 0) {
+            throw new IOException("Corrupt model file: " + filePath);
+        }
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int[] features = new int[nodes];
+        double[] thresholds = new double[nodes];
+        int[] left = new int[nodes];
+        int[] right = new int[nodes];
+        int[] labelIds = new int[nodes];
+        buffer.asIntBuffer().get(features);
+        buffer.position(buffer.position() + nodes * Integer.BYTES);
+        buffer.asDoubleBuffer().get(thresholds);
+        buffer.position(buffer.position() + nodes * Double.BYTES);
+        buffer.asIntBuffer().get(left);
+        buffer.position(buffer.position() + nodes * Integer.BYTES);
+        buffer.asIntBuffer().get(right);
+        buffer.position(buffer.position() + nodes * Integer.BYTES);
+        buffer.asIntBuffer().get(labelIds);
+        buffer.position(buffer.position() + nodes * Integer.BYTES);
+        if (buffer.position() != checksumAt) {
+            throw new IOException("Corrupt model file: " + filePath);
+        }
+
+        // map string table indexes to dictionary ids and a compact label array
+        List<String> labels = new ArrayList<>();
+        Map<Integer, Integer> stringToLabel = new HashMap<>();
+        for (int i = 0; i < nodes; i++) {
+            if (labelIds[i] < 0) {
+                if (left[i] <= 0 || left[i] >= nodes || right[i] <= 0 || right[i] >= nodes) {
+                    throw new IOException("Corrupt model file: " + filePath);
+                }
+                features[i] = dictionary.intern(strings[features[i]]);
+            } else {
+                Integer label = stringToLabel.get(labelIds[i]);
+                if (label == null) {
+                    label = labels.size();
+                    labels.add(strings[labelIds[i]]);
+                    stringToLabel.put(labelIds[i], label);
+                }
+                labelIds[i] = label;
+            }
+        }
+        return new CompiledClassifier(dictionary, features, thresholds, left, right, labelIds,
+                                      labels.toArray(new String[0]));
+    }
+
+    // Helper method - returns the index of s in the string table, adding it if needed
+    private static int indexOf(String s, List<String> strings, Map<String, Integer> stringToIndex) {
+        Integer index = stringToIndex.get(s);
+        if (index == null) {
+            index = strings.size();
+            strings.add(s);
+            stringToIndex.put(s, index);
+        }
+        return index;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,265 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+// This class represents a registry of many classifiers (for example one per tenant and
+//      language) that are loaded from model files on first use and kept in memory only
+//      while they fit in a memory budget.
+// Model ids are resolved to file paths by a caller-provided function; files can be binary
+//      model files or trees in the Classifier.save text format. Concurrent requests for a
+//      model that is still loading wait for that one load instead of starting their own.
+// Each model gets its own FeatureDictionary, so evicting a model frees its vocabulary as well
+//      as its tree; TextBlocks classified by a model must be built with its getDictionary(),
+//      preferably with TextBlock.forClassification (as classify does) so traffic never adds
+//      words to it. Footprints are estimated from the tree and vocabulary sizes when a model
+//      loads, and re-estimated whenever it is accessed after its vocabulary has grown anyway.
+//      The least recently used models are evicted once the total passes the budget. A model
+//      bigger than the whole budget is still served, as the only one kept.
+// Safe for use by multiple threads at once. Getting a model that is already loaded doesn't
+//      lock: it only stamps the model's last use. Loads, evictions and re-estimates share one
+//      lock.
+public class ModelRegistry {
+    // rough heap cost of one vocabulary word beyond its chars
+    private static final long WORD_BYTES = 96;
+
+    private final Function<String, String> paths;
+    private final long budgetBytes;
+    private final ConcurrentHashMap<String, CompletableFuture<Classifier>> models;
+    // id -> every loaded model; written only under the resident lock
+    private final ConcurrentHashMap<String, Resident> resident;
+    private volatile long residentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    // Constructs a new, empty ModelRegistry that finds the file of each model id with 'paths'
+    //      and keeps loaded models within about 'budgetBytes' of heap
+    // Throws an IllegalArgumentException
+    //      If paths is null or budgetBytes is less than 1
+    public ModelRegistry(Function<String, String> paths, long budgetBytes) {
+        if (paths == null || budgetBytes < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.paths = paths;
+        this.budgetBytes = budgetBytes;
+        this.models = new ConcurrentHashMap<>();
+        this.resident = new ConcurrentHashMap<>();
+    }
+
+    // Returns the classifier with the given id, loading it from its file if it isn't in memory
+    //      yet. If another thread is already loading it, waits for that load instead.
+    // Throws an IllegalArgumentException
+    //      If id is null or the path function has no file for it
+    // Throws an IOException
+    //      If the model file can't be read or isn't a valid model; the next call for the same
+    //      id tries loading it again
+    public Classifier get(String id) throws IOException {
+        if (id == null) {
+            throw new IllegalArgumentException();
+        }
+        CompletableFuture<Classifier> future = models.get(id);
+        if (future == null) {
+            CompletableFuture<Classifier> created = new CompletableFuture<>();
+            future = models.putIfAbsent(id, created);
+            if (future == null) {
+                misses.incrementAndGet();
+                load(id, created);
+                return await(created);
+            }
+        }
+        hits.incrementAndGet();
+        Resident model = resident.get(id);
+        if (model != null) {
+            model.lastUsed = System.nanoTime();
+            if (model.dictionary.size() != model.words) {
+                synchronized (resident) {
+                    if (resident.get(id) == model) {
+                        residentBytes += model.countNewWords();
+                        evictOverBudget(id);
+                    }
+                }
+            }
+        }
+        return await(future);
+    }
+
+    // Returns the label the model with the given id predicts for the given raw message
+    //      content, parsed with TextBlock.forClassification so the model's vocabulary never
+    //      grows
+    // Throws an IllegalArgumentException
+    //      If id or content is null, or the path function has no file for id
+    // Throws an IOException
+    //      If the model has to be loaded and its file can't be read or isn't a valid model
+    public String classify(String id, String content) throws IOException {
+        if (content == null) {
+            throw new IllegalArgumentException();
+        }
+        Classifier classifier = get(id);
+        return classifier.classify(TextBlock.forClassification(content,
+                                                               classifier.getDictionary()));
+    }
+
+    // Returns the number of get calls served by a model that was loaded or already loading
+    public long getHits() {
+        return hits.get();
+    }
+
+    // Returns the number of get calls that had to start loading a model
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // Returns the number of models evicted to stay within the memory budget
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // Returns the number of models loaded successfully
+    public long getLoads() {
+        return loads.get();
+    }
+
+    // Returns the average time a successful load took in nanoseconds, or 0 if none have
+    public long getAverageLoadNanos() {
+        long count = loads.get();
+        return count == 0 ? 0 : loadNanos.get() / count;
+    }
+
+    // Returns the estimated heap bytes of every model currently in memory
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    // Returns the estimated heap bytes of the model with the given id, or -1 if it isn't in
+    //      memory
+    public long getFootprint(String id) {
+        Resident model = resident.get(id);
+        return model == null ? -1 : model.footprint;
+    }
+
+    // Returns the number of models currently in memory
+    public int size() {
+        return resident.size();
+    }
+
+    // Returns a one line summary of this registry's statistics
+    public String toString() {
+        return String.format("%d models, %d / %d KB, %d hits, %d misses, %d evictions, "
+                             + "%.1f ms average load", size(), getResidentBytes() / 1024,
+                             budgetBytes / 1024, getHits(), getMisses(), getEvictions(),
+                             getAverageLoadNanos() / 1e6);
+    }
+
+    // Helper method - loads model 'id' and completes 'future' with it, evicting older models
+    //      if it pushes the registry over budget. On failure, completes 'future' with the
+    //      exception and forgets it so the load can be retried.
+    private void load(String id, CompletableFuture<Classifier> future) {
+        try {
+            String path = paths.apply(id);
+            if (path == null) {
+                throw new IllegalArgumentException("Unknown model id: " + id);
+            }
+            long start = System.nanoTime();
+            FeatureDictionary dictionary = new FeatureDictionary();
+            CompiledClassifier compiled;
+            if (ModelFile.isModelFile(path)) {
+                compiled = ModelFile.readCompiled(path, dictionary);
+            } else {
+                try (Scanner input = new Scanner(new File(path))) {
+                    compiled = new Classifier(input, dictionary).compile();
+                }
+            }
+            Classifier classifier = new Classifier(compiled);
+            loadNanos.addAndGet(System.nanoTime() - start);
+            loads.incrementAndGet();
+            admit(id, new Resident(dictionary, compiled.size() * Classifier.NODE_BYTES));
+            future.complete(classifier);
+        } catch (IOException | RuntimeException e) {
+            models.remove(id, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    // Helper method - records a newly loaded model, then evicts the least recently used
+    //      other models until the registry is back within budget
+    private void admit(String id, Resident model) {
+        synchronized (resident) {
+            resident.put(id, model);
+            residentBytes += model.footprint;
+            evictOverBudget(id);
+        }
+    }
+
+    // Helper method - evicts the least recently used models other than 'keep' while the
+    //      registry is over budget. Callers must hold the resident lock.
+    private void evictOverBudget(String keep) {
+        if (residentBytes <= budgetBytes) {
+            return;
+        }
+        List<Map.Entry<String, Resident>> eldest = new ArrayList<>(resident.entrySet());
+        eldest.sort((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed));
+        for (int i = 0; i < eldest.size() && residentBytes > budgetBytes; i++) {
+            Map.Entry<String, Resident> entry = eldest.get(i);
+            if (!entry.getKey().equals(keep)) {
+                residentBytes -= entry.getValue().footprint;
+                models.remove(entry.getKey());
+                resident.remove(entry.getKey());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    // This class represents one loaded model's estimated footprint: its tree, plus every word
+    //      in its dictionary as of the last estimate. The estimate is only updated under the
+    //      resident lock; lastUsed is stamped without it on every get.
+    private static class Resident {
+        private final FeatureDictionary dictionary;
+        private volatile long footprint;
+        private volatile int words;
+        // System.nanoTime() of the last get, for least recently used eviction
+        private volatile long lastUsed;
+
+        // Constructs the estimate for a model whose tree takes 'treeBytes', counting every
+        //      word already in its dictionary
+        private Resident(FeatureDictionary dictionary, long treeBytes) {
+            this.dictionary = dictionary;
+            this.footprint = treeBytes;
+            this.lastUsed = System.nanoTime();
+            countNewWords();
+        }
+
+        // Adds the words the dictionary gained since the last estimate to the footprint and
+        //      returns how many bytes that added
+        private long countNewWords() {
+            long added = 0;
+            int size = dictionary.size();
+            for (int id = words; id < size; id++) {
+                added += WORD_BYTES + 2L * dictionary.nameOf(id).length();
+            }
+            words = size;
+            footprint += added;
+            return added;
+        }
+    }
+
+    // Helper method - waits for 'future' and returns its classifier, rethrowing the load's
+    //      exception if it failed
+    private static Classifier await(CompletableFuture<Classifier> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -1,61 +1,204 @@
 import java.util.*;
 
 // This class represents a piece of text data that can be classified
+// Words are stored as a sparse vector: the ids the FeatureDictionary assigned them, sorted
+//      ascending, alongside how many times each one appeared. With a hashed FeatureDictionary
+//      the ids are hash buckets, and words sharing a bucket are counted together.
+// TextBlocks built with a constructor add every new word to their dictionary, as training
+//      needs. TextBlocks that are only going to be classified should be built with
+//      forClassification instead, which leaves the dictionary unchanged: words it doesn't
+//      know can't be branched on by any tree, so they only count toward the total words.
 public class TextBlock {
-    private Map<String, Integer> wordCounts;
+    private final FeatureDictionary dictionary;
+    private int[] featureIds;
+    private int[] counts;
     private double totalWords;
 
-    // Constructs a new TextBlock from the provided content String
+    // Constructs a new TextBlock from the provided content String, using the default
+    //      FeatureDictionary
     public TextBlock(String content) {
-        this.wordCounts = new HashMap<>();
-        parseContent(content);
+        this(content, FeatureDictionary.getDefault());
+    }
+
+    // Constructs a new TextBlock from the provided content String, assigning word ids
+    //      from the given dictionary
+    // 'dictionary' should be non-null.
+    public TextBlock(String content, FeatureDictionary dictionary) {
+        this(content, dictionary, Tokenizer.DEFAULT);
+    }
+
+    // Constructs a new TextBlock from the provided content String, splitting it into words
+    //      with the given tokenizer and assigning word ids from the given dictionary
+    // 'dictionary' and 'tokenizer' should be non-null.
+    public TextBlock(String content, FeatureDictionary dictionary, Tokenizer tokenizer) {
+        this(content, dictionary, tokenizer, true);
+    }
+
+    // Constructs a new TextBlock from the provided content String, interning new words into
+    //      the dictionary if 'intern' is true and leaving them out otherwise
+    private TextBlock(String content, FeatureDictionary dictionary, Tokenizer tokenizer,
+                      boolean intern) {
+        this.dictionary = dictionary;
+        if (ClassifierMetrics.isEnabled()) {
+            long start = System.nanoTime();
+            parseContent(content, tokenizer, intern);
+            ClassifierMetrics.recordParse(System.nanoTime() - start);
+        } else {
+            parseContent(content, tokenizer, intern);
+        }
+    }
+
+    // Returns a new TextBlock of the provided content String to classify with a model using
+    //      the given dictionary. Words the dictionary doesn't know count toward the total
+    //      words but get no id, and the dictionary is never changed.
+    // 'dictionary' should be non-null.
+    public static TextBlock forClassification(String content, FeatureDictionary dictionary) {
+        return forClassification(content, dictionary, Tokenizer.DEFAULT);
+    }
+
+    // Same as forClassification(content, dictionary), splitting the content into words with
+    //      the given tokenizer
+    // 'dictionary' and 'tokenizer' should be non-null.
+    public static TextBlock forClassification(String content, FeatureDictionary dictionary,
+                                              Tokenizer tokenizer) {
+        return new TextBlock(content, dictionary, tokenizer, false);
+    }
+
+    // Constructs a TextBlock directly from already sorted feature ids, their counts and the
+    //      total number of words, e.g. when unpacking a stored exemplar
+    TextBlock(FeatureDictionary dictionary, int[] featureIds, int[] counts, int totalWords) {
+        this.dictionary = dictionary;
+        this.featureIds = featureIds;
+        this.counts = counts;
+        this.totalWords = totalWords;
     }
 
     // Helper method - parses the content from the provided content String,
-    //      populating the word -> count map and counting the total words/tokens
-    private void parseContent(String content) {
-        Scanner sc = new Scanner(content);
-        while (sc.hasNext()) {
-            String word = sc.next();
-            if (!wordCounts.containsKey(word)) {
-                wordCounts.put(word, 0);
+    //      populating the sorted id -> count arrays and counting the total words/tokens.
+    //      Unless 'intern' is true, unknown words are only counted.
+    private void parseContent(String content, Tokenizer tokenizer, boolean intern) {
+        int[] ids = intern ? tokenizer.tokenize(content, dictionary)
+                           : tokenizer.lookup(content, dictionary);
+        int size = ids.length;
+        totalWords = size;
+        Arrays.sort(ids);
+
+        // unknown words (-1) sort first; skip them, then collapse runs of equal ids into
+        // (id, count) pairs
+        int known = 0;
+        while (known < size && ids[known] < 0) {
+            known++;
+        }
+        int distinct = 0;
+        int[] runCounts = new int[size - known];
+        for (int i = known; i < size; i++) {
+            if (distinct > 0 && ids[distinct - 1] == ids[i]) {
+                runCounts[distinct - 1]++;
+            } else {
+                ids[distinct] = ids[i];
+                runCounts[distinct] = 1;
+                distinct++;
             }
-            wordCounts.put(word, wordCounts.get(word) + 1);
-            totalWords++;
         }
+        this.featureIds = Arrays.copyOf(ids, distinct);
+        this.counts = Arrays.copyOf(runCounts, distinct);
+    }
+
+    // Returns the FeatureDictionary this TextBlock's feature ids come from
+    public FeatureDictionary getDictionary() {
+        return dictionary;
+    }
+
+    // Returns the sorted feature ids of the words in this TextBlock. Shares internal state,
+    //      so callers must not modify the array.
+    int[] getFeatureIds() {
+        return featureIds;
+    }
+
+    // Returns how many times each word of getFeatureIds() appeared. Shares internal state,
+    //      so callers must not modify the array.
+    int[] getCounts() {
+        return counts;
+    }
+
+    // Returns the total number of words in this TextBlock
+    int getTotalWords() {
+        return (int) totalWords;
     }
 
     // Returns the word probability for the given word.
     // (number of times the word appeared / total number of all words)
     // Returns 0 if this TextBlock doesn't have any words.
     public double get(String word) {
-        if (totalWords != 0 && wordCounts.containsKey(word)) {
-            return wordCounts.get(word) / totalWords;
+        return get(dictionary.lookup(word));
+    }
+
+    // Returns the word probability for the word with the given feature id.
+    // Returns 0 if this TextBlock doesn't have any words or doesn't contain the id.
+    public double get(int featureId) {
+        int index = indexOf(featureId);
+        if (totalWords != 0 && index >= 0) {
+            return counts[index] / totalWords;
         }
 
         return 0;
     }
-    
+
     // Returns a Set of all valid features for this TextBlock.
-    public Set<String> getFeatures() { return wordCounts.keySet(); }
+    public Set<String> getFeatures() {
+        Set<String> features = new HashSet<>();
+        for (int id : featureIds) {
+            features.add(dictionary.nameOf(id));
+        }
+        return features;
+    }
 
     // Returns true if TextBlock contains this feature. False otherwise.
-    public boolean containsFeature(String word) { return wordCounts.containsKey(word); }
-    
+    public boolean containsFeature(String word) { return containsFeature(dictionary.lookup(word)); }
+
+    // Returns true if TextBlock contains the feature with this id. False otherwise.
+    public boolean containsFeature(int featureId) { return indexOf(featureId) >= 0; }
+
     // Returns a feature that has the greatest difference in word probability between this
     // instance and provided 'other'
     public String findBiggestDifference(TextBlock other) {
-        // Find the word with the largest probability difference between this and other
-        Set<String> allWords = new HashSet<>(this.wordCounts.keySet());
-        allWords.addAll(other.wordCounts.keySet());
+        int bestId = findBiggestDifferenceId(other);
+        return bestId < 0 ? null : dictionary.nameOf(bestId);
+    }
 
-        String bestWord = null;
+    // Returns the id of the feature that has the greatest difference in word probability
+    //      between this instance and provided 'other', or -1 if there is no difference.
+    //      Ties are broken by FeatureDictionary.compare, so the result doesn't depend on the
+    //      order features were interned in.
+    // 'other' should share this TextBlock's dictionary.
+    public int findBiggestDifferenceId(TextBlock other) {
+        // Both id arrays are sorted, so walk them together like a merge, treating an id
+        // missing from one side as a probability of 0 there
+        int bestWord = -1;
         double highestDiff = 0;
-        for (String word : allWords) {
-            double diff = (this.containsFeature(word) ? this.get(word) : 0) - 
-                          (other.containsFeature(word) ? other.get(word) : 0);
-            diff = Math.abs(diff);
-            if (diff > highestDiff) {
+        int i = 0;
+        int j = 0;
+        while (i < this.featureIds.length || j < other.featureIds.length) {
+            int word;
+            double diff;
+            if (j == other.featureIds.length
+                    || (i < this.featureIds.length && this.featureIds[i] < other.featureIds[j])) {
+                word = this.featureIds[i];
+                diff = this.counts[i] / this.totalWords;
+                i++;
+            } else if (i == this.featureIds.length || other.featureIds[j] < this.featureIds[i]) {
+                word = other.featureIds[j];
+                diff = other.counts[j] / other.totalWords;
+                j++;
+            } else {
+                word = this.featureIds[i];
+                diff = Math.abs(this.counts[i] / this.totalWords
+                                - other.counts[j] / other.totalWords);
+                i++;
+                j++;
+            }
+            if (diff > highestDiff || (diff == highestDiff && bestWord >= 0
+                                       && dictionary.compare(word, bestWord) < 0)) {
                 bestWord = word;
                 highestDiff = diff;
             }
@@ -63,4 +206,13 @@ public class TextBlock {
 
         return bestWord;
     }
+
+    // Helper method - returns the position of the given id in featureIds, or a negative
+    //      number if it isn't present
+    private int indexOf(int featureId) {
+        if (featureId < 0) {
+            return -1;
+        }
+        return Arrays.binarySearch(featureIds, featureId);
+    }
 }
\ No newline at end of file
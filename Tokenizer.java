@@ -0,0 +1,109 @@
+import java.util.*;
+
+// This class represents a whitespace tokenizer that turns message text straight into
+//      FeatureDictionary ids. Tokens are maximal runs of non-whitespace characters, exactly
+//      as java.util.Scanner splits them by default, but without regular expressions and
+//      without creating a String for any token the dictionary already knows.
+// Optionally normalizes tokens by lowercasing them and/or stripping punctuation characters.
+public class Tokenizer {
+    // Splits on whitespace only, producing the same tokens Scanner.next() would
+    public static final Tokenizer DEFAULT = new Tokenizer(false, false);
+
+    private final boolean lowercase;
+    private final boolean stripPunctuation;
+
+    // Constructs a new Tokenizer that lowercases tokens if 'lowercase' is true and removes
+    //      punctuation characters from tokens if 'stripPunctuation' is true. Tokens left
+    //      empty by stripping are dropped.
+    public Tokenizer(boolean lowercase, boolean stripPunctuation) {
+        this.lowercase = lowercase;
+        this.stripPunctuation = stripPunctuation;
+    }
+
+    // Returns the dictionary ids of the tokens in 'content', in the order they appear,
+    //      interning tokens the dictionary hasn't seen yet
+    // 'content' and 'dictionary' should be non-null.
+    public int[] tokenize(CharSequence content, FeatureDictionary dictionary) {
+        return tokenize(content, dictionary, true);
+    }
+
+    // Returns the dictionary ids of the tokens in 'content', in the order they appear, with
+    //      -1 for every token the dictionary hasn't seen. Never adds words to the dictionary,
+    //      so it is safe to use on an unbounded stream of messages that are only classified.
+    // 'content' and 'dictionary' should be non-null.
+    public int[] lookup(CharSequence content, FeatureDictionary dictionary) {
+        return tokenize(content, dictionary, false);
+    }
+
+    // Helper method - returns the ids of the tokens in 'content', interning unseen tokens if
+    //      'intern' is true and mapping them to -1 otherwise
+    private int[] tokenize(CharSequence content, FeatureDictionary dictionary, boolean intern) {
+        int[] ids = new int[Math.max(4, content.length() / 6)];
+        int size = 0;
+        StringBuilder normalized = null;
+        int length = content.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(content.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(content.charAt(i))) {
+                i++;
+            }
+            if (start == i) {
+                break;
+            }
+
+            int id;
+            if (!lowercase && !stripPunctuation) {
+                id = intern ? dictionary.intern(content, start, i)
+                            : dictionary.lookup(content, start, i);
+            } else {
+                if (normalized == null) {
+                    normalized = new StringBuilder();
+                }
+                normalize(content, start, i, normalized);
+                if (normalized.length() == 0) {
+                    continue;
+                }
+                id = intern ? dictionary.intern(normalized, 0, normalized.length())
+                            : dictionary.lookup(normalized, 0, normalized.length());
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+        return size == ids.length ? ids : Arrays.copyOf(ids, size);
+    }
+
+    // Helper method - replaces the contents of 'out' with content[start, end) after applying
+    //      this tokenizer's normalization
+    private void normalize(CharSequence content, int start, int end, StringBuilder out) {
+        out.setLength(0);
+        for (int i = start; i < end; i++) {
+            char c = content.charAt(i);
+            if (stripPunctuation && isPunctuation(c)) {
+                continue;
+            }
+            out.append(lowercase ? Character.toLowerCase(c) : c);
+        }
+    }
+
+    // Helper method - returns true if c belongs to one of the Unicode punctuation categories
+    private static boolean isPunctuation(char c) {
+        switch (Character.getType(c)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
\ No newline at end of file
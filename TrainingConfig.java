@@ -0,0 +1,55 @@
+// This class represents the settings of a training run that decide which model it produces:
+//      the seed every random choice is drawn from, whether the training data is shuffled,
+//      and whether it is loaded in parallel.
+// Training on the same file with the same TrainingConfig always builds the same tree, and so
+//      writes a byte-identical model file with the same checksum (see ModelFile.checksum).
+//      Parallel loading only changes how fast the data is read, never the model.
+// Immutable, so it can be shared between threads and runs.
+public class TrainingConfig {
+    // Streams of randomness that seedFor derives independent seeds for
+    public static final int SHUFFLE = 0;
+    public static final int FOREST = 1;
+
+    private final long seed;
+    private final boolean shuffle;
+    private final boolean parallelLoad;
+
+    // Constructs a new TrainingConfig that draws every random choice from 'seed', shuffles
+    //      the training data if 'shuffle' is true and loads it with DataLoader.loadParallel
+    //      if 'parallelLoad' is true
+    public TrainingConfig(long seed, boolean shuffle, boolean parallelLoad) {
+        this.seed = seed;
+        this.shuffle = shuffle;
+        this.parallelLoad = parallelLoad;
+    }
+
+    // Returns the seed this config was created with
+    public long getSeed() {
+        return seed;
+    }
+
+    // Returns true if training data is shuffled before training
+    public boolean isShuffled() {
+        return shuffle;
+    }
+
+    // Returns true if training data is loaded with DataLoader.loadParallel
+    public boolean isParallelLoad() {
+        return parallelLoad;
+    }
+
+    // Returns the seed to use for the given stream of randomness (SHUFFLE or FOREST), derived
+    //      from this config's seed so different streams never draw the same numbers
+    public long seedFor(int stream) {
+        long hash = seed + (stream + 1) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    // Returns a readable description of this config, for logging which run produced a model
+    public String toString() {
+        return "seed " + seed + (shuffle ? ", shuffled" : ", file order")
+                + (parallelLoad ? ", parallel load" : "");
+    }
+}
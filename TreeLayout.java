@@ -0,0 +1,266 @@
+import java.io.*;
+import java.util.*;
+import java.util.stream.*;
+
+// This class rewrites compiled decision trees for the traffic they actually see. Because
+//      Classifier only ever splits leaves in the order examples arrive, the paths taken by
+//      the most common messages can be many levels deep and scattered across the node arrays.
+// Given how often each node was visited, optimize:
+//      - skips branches whose outcome is already decided by an earlier test of the same
+//        feature on the path to them,
+//      - collapses branches whose whole subtree predicts a single label into one leaf, and
+//      - lays nodes out depth-first with the more visited child first, so the hottest path
+//        from the root is a contiguous run of nodes and each hot step reads the next node.
+// The optimized tree predicts exactly the same label as the original for every input.
+// Usage: java TreeLayout <model> <traffic> <output>
+//      model   - a binary model file or a tree in the Classifier.save text format
+//      traffic - CSV file of messages to replay, in the layout Client expects
+//      output  - binary model file to write the optimized tree to
+public class TreeLayout {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Usage: java TreeLayout <model> <traffic> <output>");
+            return;
+        }
+        CompiledClassifier tree = load(args[0]);
+        long[] visits;
+        try (Stream<TextBlock> traffic = replay(args[1], tree)) {
+            visits = profile(tree, traffic);
+        }
+        CompiledClassifier optimized = optimize(tree, visits);
+        long[] optimizedVisits;
+        try (Stream<TextBlock> traffic = replay(args[1], tree)) {
+            optimizedVisits = profile(optimized, traffic.peek(block -> {
+                if (!tree.classify(block).equals(optimized.classify(block))) {
+                    throw new IllegalStateException("Optimized tree disagrees with the original");
+                }
+            }));
+        }
+        ModelFile.write(optimized, args[2]);
+        System.out.printf("Nodes: %d -> %d%n", tree.size(), optimized.size());
+        System.out.printf("Average branches per message: %.2f -> %.2f%n",
+                          averageDepth(tree, visits), averageDepth(optimized, optimizedVisits));
+    }
+
+    // Returns how many of the given inputs visited each node of 'tree', indexed like the
+    //      tree's node arrays. Every input visits the root.
+    // Throws an IllegalArgumentException
+    //      If tree or inputs is null, or an input doesn't share the tree's FeatureDictionary
+    public static long[] profile(CompiledClassifier tree, Stream<TextBlock> inputs) {
+        if (tree == null || inputs == null) {
+            throw new IllegalArgumentException();
+        }
+        long[] visits = new long[tree.size()];
+        Iterator<TextBlock> it = inputs.iterator();
+        while (it.hasNext()) {
+            TextBlock input = it.next();
+            if (input == null || input.getDictionary() != tree.getDictionary()) {
+                throw new IllegalArgumentException();
+            }
+            int node = 0;
+            visits[0]++;
+            while (tree.labelIds[node] < 0) {
+                if (input.get(tree.features[node]) < tree.thresholds[node]) {
+                    node = tree.left[node];
+                } else {
+                    node = tree.right[node];
+                }
+                visits[node]++;
+            }
+        }
+        return visits;
+    }
+
+    // Returns an optimized copy of the given classifier's tree, laid out for the visits
+    //      counted by Classifier.getNodeVisits while ClassifierMetrics was enabled
+    // The classifier shouldn't learn while it is being optimized.
+    // Throws an IllegalArgumentException
+    //      If classifier is null
+    // Throws an IllegalStateException
+    //      If the classifier's tree changed while it was being optimized
+    public static CompiledClassifier optimize(Classifier classifier) {
+        if (classifier == null) {
+            throw new IllegalArgumentException();
+        }
+        CompiledClassifier tree = classifier.compile();
+        long[] preOrderVisits = classifier.getNodeVisits();
+        if (preOrderVisits.length != tree.size()) {
+            throw new IllegalStateException("Classifier learned while being optimized");
+        }
+        // getNodeVisits lists nodes in pre-order; map them onto the compiled node indexes
+        long[] visits = new long[tree.size()];
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(0);
+        int next = 0;
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            visits[node] = preOrderVisits[next++];
+            if (tree.labelIds[node] < 0) {
+                stack.push(tree.right[node]);
+                stack.push(tree.left[node]);
+            }
+        }
+        return optimize(tree, visits);
+    }
+
+    // Returns an optimized copy of 'tree' that predicts the same label for every input,
+    //      laid out so the children visited most often in 'visits' come first
+    // 'visits' is indexed like the tree's node arrays, as returned by profile.
+    // Throws an IllegalArgumentException
+    //      If tree or visits is null, or visits doesn't have one count per node
+    public static CompiledClassifier optimize(CompiledClassifier tree, long[] visits) {
+        if (tree == null || visits == null || visits.length != tree.size()) {
+            throw new IllegalArgumentException();
+        }
+        int size = tree.size();
+        // for every branch reached from the root: its children once decided tests are skipped,
+        // and the label of its subtree if that subtree only ever predicts one label
+        int[] left = new int[size];
+        int[] right = new int[size];
+        int[] onlyLabel = new int[size];
+        Arrays.fill(onlyLabel, -1);
+
+        // walk the tree depth-first with an explicit stack, tracking for each feature the
+        // range [lower, upper) of values that can still reach the current node
+        Map<Integer, double[]> ranges = new HashMap<>();
+        Deque<int[]> stack = new ArrayDeque<>(); // {node, stage}
+        Deque<double[]> saved = new ArrayDeque<>(); // range each stage replaced
+        if (tree.labelIds[0] < 0) {
+            stack.push(new int[] {0, 0});
+        }
+        while (!stack.isEmpty()) {
+            int[] frame = stack.peek();
+            int node = frame[0];
+            int feature = tree.features[node];
+            double threshold = tree.thresholds[node];
+            if (frame[1] > 0) {
+                ranges.put(feature, saved.pop());
+            }
+            double[] range = ranges.getOrDefault(feature, new double[] {Double.NEGATIVE_INFINITY,
+                                                                        Double.POSITIVE_INFINITY});
+            if (frame[1] == 0) {
+                frame[1] = 1;
+                saved.push(range);
+                ranges.put(feature, new double[] {range[0], Math.min(range[1], threshold)});
+                left[node] = resolve(tree, ranges, tree.left[node]);
+                if (tree.labelIds[left[node]] < 0) {
+                    stack.push(new int[] {left[node], 0});
+                }
+            } else if (frame[1] == 1) {
+                frame[1] = 2;
+                saved.push(range);
+                ranges.put(feature, new double[] {Math.max(range[0], threshold), range[1]});
+                right[node] = resolve(tree, ranges, tree.right[node]);
+                if (tree.labelIds[right[node]] < 0) {
+                    stack.push(new int[] {right[node], 0});
+                }
+            } else {
+                stack.pop();
+                int leftLabel = labelOf(tree, onlyLabel, left[node]);
+                if (leftLabel >= 0 && leftLabel == labelOf(tree, onlyLabel, right[node])) {
+                    onlyLabel[node] = leftLabel;
+                }
+            }
+        }
+        return layOut(tree, visits, left, right, onlyLabel);
+    }
+
+    // Helper method - returns the node inputs reaching 'node' actually end up deciding at,
+    //      skipping every branch whose test is already settled by 'ranges'
+    private static int resolve(CompiledClassifier tree, Map<Integer, double[]> ranges, int node) {
+        while (tree.labelIds[node] < 0) {
+            double[] range = ranges.get(tree.features[node]);
+            if (range != null && range[1] <= tree.thresholds[node]) {
+                node = tree.left[node];
+            } else if (range != null && range[0] >= tree.thresholds[node]) {
+                node = tree.right[node];
+            } else {
+                return node;
+            }
+        }
+        return node;
+    }
+
+    // Helper method - returns the only label 'node' can predict, or -1 if it can predict more
+    private static int labelOf(CompiledClassifier tree, int[] onlyLabel, int node) {
+        return tree.labelIds[node] >= 0 ? tree.labelIds[node] : onlyLabel[node];
+    }
+
+    // Helper method - packs the reachable part of the simplified tree into new node arrays,
+    //      depth-first with the more visited child of every branch placed right after it
+    private static CompiledClassifier layOut(CompiledClassifier tree, long[] visits, int[] left,
+                                             int[] right, int[] onlyLabel) {
+        List<Integer> order = new ArrayList<>();
+        Map<Integer, Integer> newIndex = new HashMap<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(0);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            newIndex.put(node, order.size());
+            order.add(node);
+            if (labelOf(tree, onlyLabel, node) < 0) {
+                // ties keep the left child first
+                if (visits[right[node]] > visits[left[node]]) {
+                    stack.push(left[node]);
+                    stack.push(right[node]);
+                } else {
+                    stack.push(right[node]);
+                    stack.push(left[node]);
+                }
+            }
+        }
+
+        int size = order.size();
+        int[] features = new int[size];
+        double[] thresholds = new double[size];
+        int[] newLeft = new int[size];
+        int[] newRight = new int[size];
+        int[] labelIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            int node = order.get(i);
+            labelIds[i] = labelOf(tree, onlyLabel, node);
+            if (labelIds[i] >= 0) {
+                features[i] = -1;
+                newLeft[i] = -1;
+                newRight[i] = -1;
+            } else {
+                features[i] = tree.features[node];
+                thresholds[i] = tree.thresholds[node];
+                newLeft[i] = newIndex.get(left[node]);
+                newRight[i] = newIndex.get(right[node]);
+            }
+        }
+        return new CompiledClassifier(tree.getDictionary(), features, thresholds, newLeft,
+                                      newRight, labelIds, tree.labels.clone());
+    }
+
+    // Helper method - returns the average number of branches visited per input in 'visits'
+    private static double averageDepth(CompiledClassifier tree, long[] visits) {
+        long branchVisits = 0;
+        for (int i = 0; i < tree.size(); i++) {
+            if (tree.labelIds[i] < 0) {
+                branchVisits += visits[i];
+            }
+        }
+        return visits[0] == 0 ? 0 : (double) branchVisits / visits[0];
+    }
+
+    // Helper method - loads the tree at 'path' in either the binary or the text format
+    private static CompiledClassifier load(String path) throws IOException {
+        if (ModelFile.isModelFile(path)) {
+            return ModelFile.readCompiled(path, FeatureDictionary.getDefault());
+        }
+        try (Scanner input = new Scanner(new File(path))) {
+            return new Classifier(input).compile();
+        }
+    }
+
+    // Helper method - returns the messages in the traffic file at 'path', parsed to be
+    //      classified by 'tree'
+    private static Stream<TextBlock> replay(String path, CompiledClassifier tree)
+            throws IOException {
+        return DataLoader.streamForClassification(path, Client.LABEL_INDEX, Client.CONTENT_INDEX,
+                                                  tree.getDictionary())
+                .map(LabeledTextBlock::getBlock);
+    }
+}
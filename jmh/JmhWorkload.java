@@ -0,0 +1,104 @@
+import java.io.*;
+import java.util.*;
+
+// This class implements the JMH benchmarks' Workload on a Benchmark synthetic corpus, which
+//      is parsed and trained on once up front so each benchmark only times its own operation.
+// Only built with the jmh Maven profile.
+public class JmhWorkload implements spam.jmh.Workload {
+    private final List<String> messages;
+    private final List<String> labels;
+    private final List<TextBlock> data;
+    private final FeatureDictionary hashed;
+    private final Classifier classifier;
+    private final CompiledClassifier compiled;
+    private final CompiledClassifier indexed;
+    private final IndexedTrainer trainer;
+    private final String savedText;
+
+    // Constructs a workload over 'rows' synthetic messages with 'vocabulary' distinct words
+    //      and Zipf exponent 'skew', with every model already trained
+    public JmhWorkload(int rows, int vocabulary, double skew) {
+        this.labels = new ArrayList<>();
+        this.messages = Benchmark.syntheticMessages(rows, vocabulary, skew, Benchmark.SEED,
+                                                    labels);
+        this.data = new ArrayList<>();
+        for (String message : messages) {
+            data.add(new TextBlock(message));
+        }
+        this.hashed = FeatureDictionary.hashed(Benchmark.HASH_BITS);
+        this.classifier = new Classifier(data, labels);
+        this.compiled = classifier.compile();
+        this.trainer = new IndexedTrainer(Benchmark.INDEXED_MAX_DEPTH, Benchmark.INDEXED_MIN_LEAF);
+        this.indexed = trainer.train(data, labels).compile();
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        classifier.save(new PrintStream(saved));
+        this.savedText = saved.toString();
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public long parse(int i) {
+        return new TextBlock(messages.get(i)).getTotalWords();
+    }
+
+    public long parseHashed(int i) {
+        return new TextBlock(messages.get(i), hashed).getTotalWords();
+    }
+
+    public long parseForClassification(int i) {
+        return TextBlock.forClassification(messages.get(i), classifier.getDictionary())
+                .getTotalWords();
+    }
+
+    public long findBiggestDifference(int i) {
+        return data.get(i).findBiggestDifferenceId(data.get(i == 0 ? data.size() - 1 : i - 1));
+    }
+
+    public long classify(int i) {
+        return classifier.classify(data.get(i)).length();
+    }
+
+    public long classifyCompiled(int i) {
+        return compiled.classifyIndex(data.get(i));
+    }
+
+    public long classifyIndexed(int i) {
+        return indexed.classifyIndex(data.get(i));
+    }
+
+    public long classifyAll() {
+        return classifier.classifyAll(data).size();
+    }
+
+    public long classifyBatch(int first, int count, int lanes) {
+        return compiled.classifyIndexes(data.subList(first, first + count), lanes)[0];
+    }
+
+    public long classifyBatchVector(int first, int count) {
+        return compiled.classifyIndexesVector(data.subList(first, first + count))[0];
+    }
+
+    public int vectorLanes() {
+        return CompiledClassifier.vectorLanes();
+    }
+
+    public Object train() {
+        return new Classifier(data, labels);
+    }
+
+    public Object trainIndexed() {
+        return trainer.train(data, labels);
+    }
+
+    public long save() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        classifier.save(new PrintStream(out));
+        return out.size();
+    }
+
+    public Object load() {
+        return new Classifier(new Scanner(savedText));
+    }
+}
@@ -0,0 +1,63 @@
+package spam.jmh;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// JMH benchmarks of batch classify with the compiled tree: batches of 'batch' messages walked
+//      down the tree 'lanes' at a time with CompiledClassifier.classifyIndexes, or in Vector
+//      API lanes with classifyIndexesVector when 'lanes' is "vector". One lane is the same
+//      walk as classifying one message at a time. Each operation classifies one batch, so
+//      divide by the batch size to compare batch sizes.
+// The Vector API lanes need the vector and jmh profiles and a JVM with the incubator module:
+//      mvn -B -Pjmh,vector package
+//      java -jar target/benchmarks.jar BatchBenchmarks \
+//          -jvmArgsAppend "--add-modules jdk.incubator.vector"
+//      Without them, "vector" falls back to one lane and setUp says so.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BatchBenchmarks {
+    @Param("20000")
+    public int rows;
+    @Param("5000")
+    public int vocabulary;
+    @Param("1.0")
+    public double skew;
+    @Param({"16", "256", "4096"})
+    public int batch;
+    @Param({"1", "8", "16", "vector"})
+    public String lanes;
+
+    private Workload workload;
+    private int laneCount;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(rows, vocabulary, skew);
+        if (lanes.equals("vector")) {
+            laneCount = 0;
+            if (workload.vectorLanes() == 0) {
+                System.out.println("Vector API lanes unavailable; measuring one lane instead");
+            }
+        } else {
+            laneCount = Integer.parseInt(lanes);
+        }
+    }
+
+    @Benchmark
+    public long classifyBatch() {
+        int first = nextBatch();
+        return laneCount == 0 ? workload.classifyBatchVector(first, batch)
+                              : workload.classifyBatch(first, batch, laneCount);
+    }
+
+    // Helper method - returns the index of the first message of the next batch in the corpus
+    private int nextBatch() {
+        next = next + 2 * batch > workload.size() ? 0 : next + batch;
+        return next;
+    }
+}
@@ -0,0 +1,72 @@
+package spam.jmh;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// JMH benchmarks of the per-message hot paths: TextBlock parsing, findBiggestDifference and
+//      classify. Each operation handles one message, cycling through the whole corpus so
+//      results aren't tuned to a single input. SampleTime reports the latency percentiles
+//      along with the average.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ClassifyBenchmarks {
+    @Param("20000")
+    public int rows;
+    @Param("5000")
+    public int vocabulary;
+    @Param("1.0")
+    public double skew;
+
+    private Workload workload;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(rows, vocabulary, skew);
+    }
+
+    @Benchmark
+    public long parse() {
+        return workload.parse(nextMessage());
+    }
+
+    @Benchmark
+    public long parseHashed() {
+        return workload.parseHashed(nextMessage());
+    }
+
+    @Benchmark
+    public long parseForClassification() {
+        return workload.parseForClassification(nextMessage());
+    }
+
+    @Benchmark
+    public long findBiggestDifference() {
+        return workload.findBiggestDifference(nextMessage());
+    }
+
+    @Benchmark
+    public long classifyPointerTree() {
+        return workload.classify(nextMessage());
+    }
+
+    @Benchmark
+    public long classifyCompiledTree() {
+        return workload.classifyCompiled(nextMessage());
+    }
+
+    @Benchmark
+    public long classifyIndexedTree() {
+        return workload.classifyIndexed(nextMessage());
+    }
+
+    // Helper method - returns the index of the next message in the corpus
+    private int nextMessage() {
+        next = next + 1 == workload.size() ? 0 : next + 1;
+        return next;
+    }
+}
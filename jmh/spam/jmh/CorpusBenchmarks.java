@@ -0,0 +1,55 @@
+package spam.jmh;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// JMH benchmarks of the whole-corpus paths: training with both trainers, batch classify,
+//      and saving and loading the text format. Each operation handles the whole corpus.
+//      Operations that build a classifier return it for JMH to consume, so nothing but the
+//      build itself is timed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CorpusBenchmarks {
+    @Param("20000")
+    public int rows;
+    @Param("5000")
+    public int vocabulary;
+    @Param("1.0")
+    public double skew;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(rows, vocabulary, skew);
+    }
+
+    @Benchmark
+    public Object train() {
+        return workload.train();
+    }
+
+    @Benchmark
+    public Object trainIndexed() {
+        return workload.trainIndexed();
+    }
+
+    @Benchmark
+    public long classifyAll() {
+        return workload.classifyAll();
+    }
+
+    @Benchmark
+    public long save() {
+        return workload.save();
+    }
+
+    @Benchmark
+    public Object load() {
+        return workload.load();
+    }
+}
@@ -0,0 +1,72 @@
+package spam.jmh;
+
+// This interface represents the classifier operations the JMH benchmarks time, on one
+//      synthetic corpus. The classifier's classes are in the default package, which JMH
+//      benchmarks can't be in and named packages can't import, so they are reached through
+//      this interface, implemented by JmhWorkload in the default package.
+// Every method returns a checksum of its work, or the classifier it built, for the benchmark to
+//      consume.
+public interface Workload {
+    // Returns a Workload over 'rows' synthetic messages with 'vocabulary' distinct words and
+    //      Zipf exponent 'skew', generated the same way as Benchmark's corpora
+    // Throws an IllegalStateException
+    //      If JmhWorkload isn't on the classpath
+    static Workload create(int rows, int vocabulary, double skew) {
+        try {
+            return (Workload) Class.forName("JmhWorkload")
+                    .getConstructor(int.class, int.class, double.class)
+                    .newInstance(rows, vocabulary, skew);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Couldn't create JmhWorkload", e);
+        }
+    }
+
+    // Returns the number of messages in the corpus
+    int size();
+
+    // Builds a TextBlock of message i with the default dictionary
+    long parse(int i);
+
+    // Builds a TextBlock of message i with a hashed dictionary
+    long parseHashed(int i);
+
+    // Builds a TextBlock of message i with TextBlock.forClassification
+    long parseForClassification(int i);
+
+    // Finds the biggest difference between messages i and i - 1
+    long findBiggestDifference(int i);
+
+    // Classifies message i with the pointer tree
+    long classify(int i);
+
+    // Classifies message i with the compiled tree
+    long classifyCompiled(int i);
+
+    // Classifies message i with the tree IndexedTrainer grew
+    long classifyIndexed(int i);
+
+    // Classifies the whole corpus with one Classifier.classifyAll call
+    long classifyAll();
+
+    // Classifies messages [first, first + count) with the compiled tree, 'lanes' at a time
+    long classifyBatch(int first, int count, int lanes);
+
+    // Classifies messages [first, first + count) with the compiled tree in Vector API lanes,
+    //      or one at a time if they aren't available
+    long classifyBatchVector(int first, int count);
+
+    // Returns the number of Vector API lanes, or 0 if they aren't available
+    int vectorLanes();
+
+    // Trains a Classifier on the whole corpus and returns it
+    Object train();
+
+    // Trains with IndexedTrainer on the whole corpus and returns the Classifier
+    Object trainIndexed();
+
+    // Saves the trained classifier in the text format
+    long save();
+
+    // Loads the saved classifier back with the Scanner constructor and returns it
+    Object load();
+}
@@ -0,0 +1,56 @@
+import java.util.*;
+import jdk.incubator.vector.*;
+
+// This class walks batches of inputs down a CompiledClassifier with the Vector API, as many
+//      inputs at a time as the platform's preferred vector holds doubles. Each step looks up
+//      every lane's value for its current node, gathers the lanes' thresholds and children
+//      by node index, then compares and picks every lane's child with one vector compare and
+//      blend. Lanes that reach a leaf early stop moving.
+// Only built with the vector Maven profile, and only used by CompiledClassifier when the JVM
+//      runs with --add-modules jdk.incubator.vector. The lookups of each lane's value are
+//      still scalar binary searches, and they dominate: on the machines we measured this was
+//      slower than classifying one input at a time.
+class VectorLanes implements CompiledClassifier.LaneWalker {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.length() * Integer.SIZE));
+
+    public int lanes() {
+        return DOUBLES.length();
+    }
+
+    public int[] classifyIndexes(CompiledClassifier tree, List<TextBlock> inputs) {
+        int lanes = DOUBLES.length();
+        int[] results = new int[inputs.size()];
+        int[] node = new int[lanes];
+        double[] values = new double[lanes];
+        int base = 0;
+        for (; base + lanes <= results.length; base += lanes) {
+            Arrays.fill(node, 0);
+            while (true) {
+                VectorMask<Integer> active =
+                        IntVector.fromArray(INTS, tree.labelIds, 0, node, 0).lt(0);
+                if (!active.anyTrue()) {
+                    break;
+                }
+                for (int l = 0; l < lanes; l++) {
+                    int feature = tree.features[node[l]];
+                    values[l] = feature < 0 ? 0 : inputs.get(base + l).get(feature);
+                }
+                VectorMask<Double> goLeft = DoubleVector.fromArray(DOUBLES, values, 0)
+                        .lt(DoubleVector.fromArray(DOUBLES, tree.thresholds, 0, node, 0));
+                IntVector next = IntVector.fromArray(INTS, tree.right, 0, node, 0)
+                        .blend(IntVector.fromArray(INTS, tree.left, 0, node, 0),
+                               goLeft.cast(INTS));
+                IntVector.fromArray(INTS, node, 0).blend(next, active).intoArray(node, 0);
+            }
+            for (int l = 0; l < lanes; l++) {
+                results[base + l] = tree.labelIds[node[l]];
+            }
+        }
+        for (; base < results.length; base++) {
+            results[base] = tree.classifyIndex(inputs.get(base));
+        }
+        return results;
+    }
+}